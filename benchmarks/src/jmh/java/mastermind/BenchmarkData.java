@@ -0,0 +1,28 @@
+package mastermind;
+
+import java.util.Random;
+
+// random inputs shared by the benchmarks, drawn from a fixed seed so runs compare
+class BenchmarkData {
+  static final long SEED = 42;
+
+  // count random sequences of the configuration
+  static ILoColor[] sequences(int count, boolean duplicatesAllowed, int pegs, ILoColor palette, Random rand) {
+    ILoColor[] sequences = new ILoColor[count];
+    for (int i = 0; i < count; i++) {
+      sequences[i] = MMGame.makeSequence(duplicatesAllowed, pegs, palette, rand);
+    }
+    return sequences;
+  }
+
+  // a history of the given length, every guess scored against the secret
+  static ILoGuess history(int length, int pegs, ILoColor palette, ILoColor secret, Random rand) {
+    ILoGuess past = new MtLoGuess();
+    for (int i = 0; i < length; i++) {
+      ILoColor guess = MMGame.makeSequence(true, pegs, palette, rand);
+      int exact = guess.findExact(secret);
+      past = past.append(new Guess(guess, guess.findInexact(secret) - exact, exact));
+    }
+    return past;
+  }
+}
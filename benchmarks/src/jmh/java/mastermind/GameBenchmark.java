@@ -0,0 +1,45 @@
+package mastermind;
+
+import javalib.funworld.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// submitting a guess and building the board scene of a game part way through
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameBenchmark {
+  @Param({"4", "6"})
+  int pegs;
+
+  @Param({"6", "9"})
+  int colors;
+
+  @Param({"2", "10", "40"})
+  int historyLength;
+
+  MMGame game;
+
+  @Setup
+  public void setUp() {
+    Random rand = new Random(BenchmarkData.SEED);
+    ILoColor palette = MMGame.makePalette(this.colors);
+    ILoColor secret = MMGame.makeSequence(true, this.pegs, palette, rand);
+    ILoGuess past = BenchmarkData.history(this.historyLength, this.pegs, palette, secret, rand);
+    ILoColor current = MMGame.makeSequence(true, this.pegs, palette, rand);
+    this.game = new MMGame(true, this.pegs, this.historyLength + 2, palette, secret, current, past, rand);
+  }
+
+  @Benchmark
+  public MMGame processGuess() {
+    return this.game.processGuess();
+  }
+
+  @Benchmark
+  public WorldScene drawBoard() {
+    return this.game.drawBoardOn(new WorldScene(this.game.width(), this.game.height()));
+  }
+}
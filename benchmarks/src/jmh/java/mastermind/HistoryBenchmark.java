@@ -0,0 +1,43 @@
+package mastermind;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// adding a guess to, and measuring, histories of growing length
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryBenchmark {
+  @Param({"10", "100", "1000"})
+  int historyLength;
+
+  @Param({"4"})
+  int pegs;
+
+  @Param({"6"})
+  int colors;
+
+  ILoGuess past;
+  Guess next;
+
+  @Setup
+  public void setUp() {
+    Random rand = new Random(BenchmarkData.SEED);
+    ILoColor palette = MMGame.makePalette(this.colors);
+    ILoColor secret = MMGame.makeSequence(true, this.pegs, palette, rand);
+    this.past = BenchmarkData.history(this.historyLength, this.pegs, palette, secret, rand);
+    this.next = this.past.getIndex(0);
+  }
+
+  @Benchmark
+  public ILoGuess append() {
+    return this.past.append(this.next);
+  }
+
+  @Benchmark
+  public int length() {
+    return this.past.length();
+  }
+}
@@ -0,0 +1,59 @@
+package mastermind;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// feedback of one guess against one secret, the list walk against the packed codes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ScoringBenchmark.PAIRS)
+public class ScoringBenchmark {
+  static final int PAIRS = 1024;
+
+  @Param({"4", "5", "6"})
+  int pegs;
+
+  @Param({"6", "8", "10"})
+  int colors;
+
+  ILoColor[] guesses;
+  ILoColor[] secrets;
+  long[] packedGuesses;
+  long[] packedSecrets;
+
+  @Setup
+  public void setUp() {
+    Random rand = new Random(BenchmarkData.SEED);
+    ILoColor palette = MMGame.makePalette(this.colors);
+    this.guesses = BenchmarkData.sequences(PAIRS, true, this.pegs, palette, rand);
+    this.secrets = BenchmarkData.sequences(PAIRS, true, this.pegs, palette, rand);
+    this.packedGuesses = new long[PAIRS];
+    this.packedSecrets = new long[PAIRS];
+    for (int i = 0; i < PAIRS; i++) {
+      this.packedGuesses[i] = PackedCode.pack(this.guesses[i], palette);
+      this.packedSecrets[i] = PackedCode.pack(this.secrets[i], palette);
+    }
+  }
+
+  @Benchmark
+  public int findExactAndInexact() {
+    int sum = 0;
+    for (int i = 0; i < PAIRS; i++) {
+      int exact = this.guesses[i].findExact(this.secrets[i]);
+      sum += exact + this.guesses[i].findInexact(this.secrets[i]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int packedScore() {
+    int sum = 0;
+    for (int i = 0; i < PAIRS; i++) {
+      sum += PackedCode.score(this.packedGuesses[i], this.packedSecrets[i], this.pegs);
+    }
+    return sum;
+  }
+}
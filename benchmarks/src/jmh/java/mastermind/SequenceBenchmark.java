@@ -0,0 +1,47 @@
+package mastermind;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// drawing a random secret with and without repeated colors
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SequenceBenchmark {
+  @Param({"true", "false"})
+  boolean duplicatesAllowed;
+
+  @Param({"4", "6"})
+  int pegs;
+
+  @Param({"6", "10"})
+  int colors;
+
+  ILoColor palette;
+  Random rand;
+  SequenceGenerator generator;
+  SplittableRandom splittable;
+  int[] scratch;
+
+  @Setup
+  public void setUp() {
+    this.palette = MMGame.makePalette(this.colors);
+    this.rand = new Random(BenchmarkData.SEED);
+    this.generator = new SequenceGenerator(this.colors, this.pegs, this.duplicatesAllowed);
+    this.splittable = new SplittableRandom(BenchmarkData.SEED);
+    this.scratch = new int[this.pegs];
+  }
+
+  @Benchmark
+  public ILoColor makeSequence() {
+    return MMGame.makeSequence(this.duplicatesAllowed, this.pegs, this.palette, this.rand);
+  }
+
+  @Benchmark
+  public long nextPacked() {
+    return this.generator.nextPacked(this.splittable, this.scratch);
+  }
+}
@@ -0,0 +1,283 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// the codes of a code space still consistent with the feedback, one bit per code;
+// filtering scores a whole 64-code block against the guess and keeps the block's
+// survivors with a single mask, so no list is built and a million codes take 16K words
+class CandidateSet {
+  // words per parallel filtering leaf
+  static final int LEAF_WORDS = 1 << 10;
+
+  CodeSpace space;
+  long[] words;
+  int count;
+
+  // every code of the space
+  CandidateSet(CodeSpace space) {
+    this.space = space;
+    this.words = new long[(space.size() + 63) >>> 6];
+    for (int word = 0; word < this.words.length; word++) {
+      this.words[word] = -1L;
+    }
+    int tail = space.size() & 63;
+    if (tail != 0) {
+      this.words[this.words.length - 1] = (1L << tail) - 1;
+    }
+    this.count = space.size();
+  }
+
+  // a copy that filters independently
+  CandidateSet(CandidateSet other) {
+    this.space = other.space;
+    this.words = other.words.clone();
+    this.count = other.count;
+  }
+
+  // the candidates of the given words
+  CandidateSet(CodeSpace space, long[] words) {
+    this.space = space;
+    this.words = words;
+    this.recount();
+  }
+
+  // the number of candidates
+  int size() {
+    return this.count;
+  }
+
+  // is the code still a candidate
+  boolean contains(int code) {
+    return (this.words[code >>> 6] & (1L << code)) != 0;
+  }
+
+  // the lowest candidate, or -1 when there are none
+  int first() {
+    for (int word = 0; word < this.words.length; word++) {
+      if (this.words[word] != 0) {
+        return (word << 6) + Long.numberOfTrailingZeros(this.words[word]);
+      }
+    }
+    return -1;
+  }
+
+  // writes the candidates in ascending order into the array, returns how many there are
+  int copyInto(int[] codes) {
+    int next = 0;
+    for (int word = 0; word < this.words.length; word++) {
+      long bits = this.words[word];
+      while (bits != 0) {
+        codes[next] = (word << 6) + Long.numberOfTrailingZeros(bits);
+        next += 1;
+        bits &= bits - 1;
+      }
+    }
+    return next;
+  }
+
+  // the candidates in ascending order
+  int[] toArray() {
+    int[] codes = new int[this.count];
+    this.copyInto(codes);
+    return codes;
+  }
+
+  // keeps only the codes that would have given this feedback to the guess
+  void filter(int guess, int feedback) {
+    this.filterCode(this.space.codes[guess], feedback, null);
+  }
+
+  // filters with the words split across the pool
+  void filter(int guess, int feedback, ForkJoinPool pool) {
+    this.filterCode(this.space.codes[guess], feedback, pool);
+  }
+
+  // filters by a packed guess that need not be in the space, as a game without repeats
+  // still lets the player guess one
+  void filterCode(long guess, int feedback, ForkJoinPool pool) {
+    if (pool == null || this.words.length <= LEAF_WORDS) {
+      this.filterWords(guess, feedback, 0, this.words.length);
+    } else {
+      pool.invoke(new FilterTask(this, guess, feedback, 0, this.words.length));
+    }
+    this.recount();
+  }
+
+  // filters the words from up to but not including to
+  void filterWords(long guess, int feedback, int from, int to) {
+    CodeSpace space = this.space;
+    long code = guess;
+    int pegs = space.pegs;
+    long low = PackedCode.histogram(guess, pegs, false);
+    long high = PackedCode.histogram(guess, pegs, true);
+    for (int word = from; word < to; word++) {
+      long bits = this.words[word];
+      if (bits == 0) {
+        continue;
+      }
+      int base = word << 6;
+      long keep = 0;
+      if (bits == -1L) {
+        // a full block scores every code straight through, with no branches to mispredict
+        for (int bit = 0; bit < 64; bit++) {
+          int secret = base + bit;
+          int exact = PackedCode.exactMatches(code, space.codes[secret], pegs);
+          int matches = PackedCode.sumOfMins(low, space.lowCounts[secret])
+                  + PackedCode.sumOfMins(high, space.highCounts[secret]);
+          int score = PackedCode.feedback(exact, matches - exact);
+          keep |= (long) (((score ^ feedback) - 1) >>> 31) << bit;
+        }
+      } else {
+        // a sparse block only visits its survivors
+        long rest = bits;
+        while (rest != 0) {
+          int bit = Long.numberOfTrailingZeros(rest);
+          int secret = base + bit;
+          int exact = PackedCode.exactMatches(code, space.codes[secret], pegs);
+          int matches = PackedCode.sumOfMins(low, space.lowCounts[secret])
+                  + PackedCode.sumOfMins(high, space.highCounts[secret]);
+          if (PackedCode.feedback(exact, matches - exact) == feedback) {
+            keep |= 1L << bit;
+          }
+          rest &= rest - 1;
+        }
+      }
+      this.words[word] = keep;
+    }
+  }
+
+  // scores every candidate against a guess that need not be in the space, writing each
+  // candidate's feedback in ascending order into scores and counting them into sizes
+  void partition(long guess, byte[] scores, int[] sizes) {
+    this.partitionWords(guess, scores, sizes, 0, this.words.length, 0);
+  }
+
+  // partitions with the words split across the pool
+  void partition(long guess, byte[] scores, int[] sizes, ForkJoinPool pool) {
+    if (pool == null || this.words.length <= LEAF_WORDS) {
+      this.partition(guess, scores, sizes);
+    } else {
+      int[] counted = pool.invoke(new ScoreTask(this, guess, scores, 0, this.words.length, 0));
+      for (int feedback = 0; feedback < sizes.length; feedback++) {
+        sizes[feedback] += counted[feedback];
+      }
+    }
+  }
+
+  // partitions the words from up to but not including to, whose first candidate is the
+  // offset-th in ascending order
+  void partitionWords(long guess, byte[] scores, int[] sizes, int from, int to, int offset) {
+    CodeSpace space = this.space;
+    int pegs = space.pegs;
+    long low = PackedCode.histogram(guess, pegs, false);
+    long high = PackedCode.histogram(guess, pegs, true);
+    int next = offset;
+    for (int word = from; word < to; word++) {
+      long bits = this.words[word];
+      while (bits != 0) {
+        int secret = (word << 6) + Long.numberOfTrailingZeros(bits);
+        int score = PackedCode.score(guess, low, high,
+                space.codes[secret], space.lowCounts[secret], space.highCounts[secret], pegs);
+        scores[next] = (byte) score;
+        sizes[score] += 1;
+        next += 1;
+        bits &= bits - 1;
+      }
+    }
+  }
+
+  // how many candidates the words from up to but not including to hold
+  int countWords(int from, int to) {
+    int total = 0;
+    for (int word = from; word < to; word++) {
+      total += Long.bitCount(this.words[word]);
+    }
+    return total;
+  }
+
+  // the candidates whose feedback, as written by partition, is the given one
+  CandidateSet keeping(byte[] scores, int feedback) {
+    long[] kept = new long[this.words.length];
+    int next = 0;
+    for (int word = 0; word < this.words.length; word++) {
+      long bits = this.words[word];
+      while (bits != 0) {
+        long bit = bits & -bits;
+        if ((scores[next] & 0xFF) == feedback) {
+          kept[word] |= bit;
+        }
+        next += 1;
+        bits ^= bit;
+      }
+    }
+    return new CandidateSet(this.space, kept);
+  }
+
+  // counts the candidates again after filtering
+  void recount() {
+    this.count = this.countWords(0, this.words.length);
+  }
+}
+
+class ExamplesCandidateSet {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+
+  boolean testFilter(Tester tester) {
+    CandidateSet all = new CandidateSet(classic);
+    CandidateSet filtered = new CandidateSet(all);
+    int guess = classic.indexOf(0x0011L);
+    int secret = 1000;
+    filtered.filter(guess, classic.score(guess, secret));
+
+    // the reference: every code that scores the same against the guess
+    int[] reference = new int[classic.size()];
+    int expected = 0;
+    for (int code = 0; code < classic.size(); code++) {
+      if (classic.score(guess, code) == classic.score(guess, secret)) {
+        reference[expected] = code;
+        expected += 1;
+      }
+    }
+    return tester.checkExpect(all.size(), 1296)
+            && tester.checkExpect(filtered.size(), expected)
+            && tester.checkExpect(filtered.toArray(), Arrays.copyOf(reference, expected))
+            && tester.checkExpect(filtered.contains(secret), true)
+            && tester.checkExpect(filtered.first(), filtered.toArray()[0]);
+  }
+
+  boolean testParallelFilter(Tester tester) {
+    CodeSpace wide = new CodeSpace(10, 5, true);
+    CandidateSet sequential = new CandidateSet(wide);
+    CandidateSet parallel = new CandidateSet(wide);
+    int guess = wide.indexOf(0x00123L);
+    sequential.filter(guess, wide.score(guess, 4242));
+    parallel.filter(guess, wide.score(guess, 4242), SolverPools.withParallelism(4));
+    return tester.checkExpect(parallel.words, sequential.words)
+            && tester.checkExpect(parallel.size(), sequential.size());
+  }
+
+  boolean testPartition(Tester tester) {
+    // the same scores and sizes as filtering by each feedback, split across a pool or not
+    CodeSpace wide = new CodeSpace(10, 5, true);
+    CandidateSet alive = new CandidateSet(wide);
+    alive.filter(wide.indexOf(0x01234L), wide.score(wide.indexOf(0x01234L), 777));
+    long guess = 0x55667L;
+    byte[] scores = new byte[alive.size()];
+    int[] sizes = new int[PackedCode.FEEDBACK_SIZE];
+    alive.partition(guess, scores, sizes);
+    byte[] parallelScores = new byte[alive.size()];
+    int[] parallelSizes = new int[PackedCode.FEEDBACK_SIZE];
+    alive.partition(guess, parallelScores, parallelSizes, SolverPools.withParallelism(4));
+
+    int feedback = PackedCode.feedback(0, 1);
+    CandidateSet filtered = new CandidateSet(alive);
+    filtered.filter(wide.indexOf(guess), feedback);
+    return tester.checkExpect(parallelScores, scores)
+            && tester.checkExpect(parallelSizes, sizes)
+            && tester.checkExpect(alive.keeping(scores, feedback).words, filtered.words)
+            && tester.checkExpect(sizes[feedback], filtered.size());
+  }
+}
@@ -0,0 +1,198 @@
+package mastermind;
+
+import java.util.Arrays;
+
+// scores a guess against a secret, both given as indices into a code space
+interface IScorer {
+  // the packed feedback of the guess against the secret
+  int score(int guess, int secret);
+
+  // adds the feedback of the guess against secrets[from] to secrets[to - 1] to the histogram,
+  // returns the largest partition or any value above the bound once one passes it
+  int partition(int guess, int[] secrets, int from, int to, int[] histogram, int bound);
+}
+
+// every code of a configuration, packed and in ascending order, so a code's
+// index is its rank and can be found again by binary search
+class CodeSpace implements IScorer {
+  // keeps the packed codes and their histograms within a few hundred megabytes
+  static final int MAX_CODES = 1 << 24;
+
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+
+  long[] codes;
+  // per-code color histograms, see PackedCode.histogram
+  long[] lowCounts;
+  long[] highCounts;
+
+  CodeSpace(int colors, int pegs, boolean duplicatesAllowed) {
+    if (!PackedCode.fits(colors, pegs)) {
+      throw new IllegalArgumentException("configuration is too wide to pack");
+    }
+    long count = countCodes(colors, pegs, duplicatesAllowed);
+    if (count > MAX_CODES) {
+      throw new IllegalArgumentException("code space is too large to enumerate");
+    }
+    this.colors = colors;
+    this.pegs = pegs;
+    this.duplicatesAllowed = duplicatesAllowed;
+
+    this.codes = new long[(int) count];
+    this.fill(0, 0L, 0, 0);
+
+    this.lowCounts = new long[this.codes.length];
+    this.highCounts = new long[this.codes.length];
+    for (int i = 0; i < this.codes.length; i++) {
+      this.lowCounts[i] = PackedCode.histogram(this.codes[i], pegs, false);
+      this.highCounts[i] = PackedCode.histogram(this.codes[i], pegs, true);
+    }
+  }
+
+  // the code space of a game's configuration
+  static CodeSpace of(MMGame game) {
+    return new CodeSpace(game.possibleColors.length(), game.sequenceLen, game.duplicatesAllowed);
+  }
+
+  // how many codes the configuration has
+  static long countCodes(int colors, int pegs, boolean duplicatesAllowed) {
+    long count = 1;
+    for (int peg = 0; peg < pegs; peg++) {
+      count *= duplicatesAllowed ? colors : colors - peg;
+      if (count > Integer.MAX_VALUE) {
+        return count;
+      }
+    }
+    return count;
+  }
+
+  // writes every code with the given prefix in lexicographic order, returns the next free slot
+  int fill(int next, long prefix, int placed, int usedColors) {
+    if (placed == this.pegs) {
+      this.codes[next] = prefix;
+      return next + 1;
+    } else {
+      for (int color = 0; color < this.colors; color++) {
+        if (this.duplicatesAllowed || (usedColors & (1 << color)) == 0) {
+          next = this.fill(next, PackedCode.push(prefix, color), placed + 1, usedColors | (1 << color));
+        }
+      }
+      return next;
+    }
+  }
+
+  // the number of codes
+  int size() {
+    return this.codes.length;
+  }
+
+  // the packed code at the given index
+  long code(int index) {
+    return this.codes[index];
+  }
+
+  // the index of the given packed code
+  int indexOf(long code) {
+    int index = Arrays.binarySearch(this.codes, code);
+    if (index < 0) {
+      throw new IllegalArgumentException("code is not in the code space");
+    }
+    return index;
+  }
+
+  // the index of the given list of colors
+  int indexOf(ILoColor sequence, ILoColor palette) {
+    return this.indexOf(PackedCode.pack(sequence, palette));
+  }
+
+  public int score(int guess, int secret) {
+    return PackedCode.score(this.codes[guess], this.lowCounts[guess], this.highCounts[guess],
+            this.codes[secret], this.lowCounts[secret], this.highCounts[secret], this.pegs);
+  }
+
+  public int partition(int guess, int[] secrets, int from, int to, int[] histogram, int bound) {
+    long code = this.codes[guess];
+    long low = this.lowCounts[guess];
+    long high = this.highCounts[guess];
+    // with eight colors or fewer the high histograms are always empty
+    boolean narrow = this.colors <= 8;
+    int worst = 0;
+    for (int i = from; i < to; i++) {
+      int secret = secrets[i];
+      int exact = PackedCode.exactMatches(code, this.codes[secret], this.pegs);
+      int matches = PackedCode.sumOfMins(low, this.lowCounts[secret]);
+      if (!narrow) {
+        matches += PackedCode.sumOfMins(high, this.highCounts[secret]);
+      }
+      int size = ++histogram[PackedCode.feedback(exact, matches - exact)];
+      if (size > worst) {
+        worst = size;
+        if (worst > bound) {
+          return worst;
+        }
+      }
+    }
+    return worst;
+  }
+}
+
+// every feedback of a code space computed once, one byte per (guess, secret) pair
+class ScoreTable implements IScorer {
+  // sixty-four megabytes, enough for 8 colors by 4 pegs
+  static final long MAX_ENTRIES = 1L << 26;
+
+  int size;
+  byte[] feedback;
+
+  ScoreTable(CodeSpace space) {
+    if (!fitsInMemory(space)) {
+      throw new IllegalArgumentException("code space is too large to tabulate");
+    }
+    this.size = space.size();
+    this.feedback = new byte[this.size * this.size];
+    for (int guess = 0; guess < this.size; guess++) {
+      int row = guess * this.size;
+      for (int secret = 0; secret < this.size; secret++) {
+        this.feedback[row + secret] = (byte) space.score(guess, secret);
+      }
+    }
+  }
+
+  // can the whole table be held in memory
+  static boolean fitsInMemory(CodeSpace space) {
+    return (long) space.size() * space.size() <= MAX_ENTRIES;
+  }
+
+  // a table registered for the configuration, else a new table when it fits, otherwise
+  // scores straight from the code space
+  static IScorer bestFor(CodeSpace space) {
+    FeedbackTables registered = FeedbackTables.lookup(space.colors, space.pegs, space.duplicatesAllowed);
+    if (registered != null) {
+      return registered.scorer;
+    } else if (fitsInMemory(space)) {
+      return new ScoreTable(space);
+    } else {
+      return space;
+    }
+  }
+
+  public int score(int guess, int secret) {
+    return this.feedback[guess * this.size + secret] & 0xFF;
+  }
+
+  public int partition(int guess, int[] secrets, int from, int to, int[] histogram, int bound) {
+    int row = guess * this.size;
+    int worst = 0;
+    for (int i = from; i < to; i++) {
+      int size = ++histogram[this.feedback[row + secrets[i]] & 0xFF];
+      if (size > worst) {
+        worst = size;
+        if (worst > bound) {
+          return worst;
+        }
+      }
+    }
+    return worst;
+  }
+}
@@ -0,0 +1,256 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// counts values into log-linear buckets, like HdrHistogram: exact below 64, then 32 buckets
+// per power of two, so any value is off by at most 1/32 and recording is one increment
+class LatencyHistogram {
+  static final int SUB_BITS = 5;
+  static final int SUB_COUNT = 1 << SUB_BITS;
+  static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+  AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  LongAdder total = new LongAdder();
+  LongAdder sum = new LongAdder();
+  LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  // the bucket of a value
+  static int bucket(long value) {
+    if (value < 2 * SUB_COUNT) {
+      return (int) Math.max(0, value);
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+  }
+
+  // the lowest value of a bucket
+  static long lowest(int bucket) {
+    if (bucket < 2 * SUB_COUNT) {
+      return bucket;
+    }
+    int shift = bucket / SUB_COUNT - 1;
+    return (long) (bucket % SUB_COUNT + SUB_COUNT) << shift;
+  }
+
+  void record(long value) {
+    this.counts.incrementAndGet(bucket(value));
+    this.total.increment();
+    this.sum.add(value);
+    this.max.accumulate(value);
+  }
+
+  // how many values were recorded
+  long count() {
+    return this.total.sum();
+  }
+
+  // the mean of the recorded values
+  double mean() {
+    long count = this.count();
+    return count == 0 ? 0 : (double) this.sum.sum() / count;
+  }
+
+  // the value the given percent of the recorded values are at or below, to bucket precision
+  long percentile(double percent) {
+    long count = this.count();
+    long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += this.counts.get(bucket);
+      if (seen >= rank) {
+        return lowest(bucket);
+      }
+    }
+    return this.max.get();
+  }
+
+  void reset() {
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      this.counts.set(bucket, 0);
+    }
+    this.total.reset();
+    this.sum.reset();
+    this.max.reset();
+  }
+}
+
+// one instrumented operation: how often it ran and how long it took
+class HotPath {
+  String name;
+  // what the histogram counts, nanoseconds unless said otherwise
+  String unit;
+  LatencyHistogram histogram = new LatencyHistogram();
+
+  HotPath(String name, String unit) {
+    this.name = name;
+    this.unit = unit;
+  }
+
+  void record(long value) {
+    this.histogram.record(value);
+  }
+
+  // one line of the text dump
+  String report() {
+    return String.format("%-14s %10d calls  mean %10.0f  p50 %9d  p99 %9d  max %10d %s",
+            this.name, this.histogram.count(), this.histogram.mean(), this.histogram.percentile(50),
+            this.histogram.percentile(99), this.histogram.max.get(), this.unit);
+  }
+}
+
+// timings of the engine's hot paths; off unless -Dmastermind.metrics=true, and since the flag
+// is a static final the JIT drops every guarded timing call when it is off. Once on, they are
+// published as the JMX bean mastermind:type=EngineMetrics and, given
+// -Dmastermind.metrics.dumpSeconds=N, printed to standard error every N seconds
+class EngineMetrics implements EngineMetricsMXBean {
+  static final boolean ENABLED = Boolean.getBoolean("mastermind.metrics");
+
+  static final HotPath PROCESS_GUESS = new HotPath("processGuess", "ns");
+  static final HotPath FIND_EXACT = new HotPath("findExact", "ns");
+  static final HotPath FIND_INEXACT = new HotPath("findInexact", "ns");
+  static final HotPath MAKE_SCENE = new HotPath("makeScene", "ns");
+  static final HotPath DRAW_BOARD = new HotPath("drawBoard", "ns");
+  static final HotPath FRAME_ALLOCATION = new HotPath("frameAlloc", "bytes");
+  static final HotPath[] ALL = {PROCESS_GUESS, FIND_EXACT, FIND_INEXACT, MAKE_SCENE, DRAW_BOARD, FRAME_ALLOCATION};
+
+  // null when the JVM cannot count a thread's allocations
+  static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(new EngineMetrics(), new ObjectName("mastermind:type=EngineMetrics"));
+      } catch (JMException e) {
+        System.err.println("engine metrics are not published over JMX: " + e);
+      }
+      long period = Long.getLong("mastermind.metrics.dumpSeconds", 0);
+      if (period > 0) {
+        dumpEvery(period, System.err);
+      }
+    }
+  }
+
+  // the thread bean, if it counts allocated bytes
+  static com.sun.management.ThreadMXBean allocationCounter() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+        return threads;
+      }
+    }
+    return null;
+  }
+
+  // the bytes this thread has allocated so far, or 0 when they are not counted
+  static long allocatedBytes() {
+    return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+  }
+
+  // every hot path, a line each
+  static String report() {
+    StringBuilder report = new StringBuilder();
+    for (HotPath path : ALL) {
+      report.append(path.report()).append('\n');
+    }
+    return report.toString();
+  }
+
+  // prints the report on a daemon thread every period seconds
+  static ScheduledExecutorService dumpEvery(long periodSeconds, PrintStream out) {
+    ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+      Thread thread = new Thread(task, "engine-metrics-dump");
+      thread.setDaemon(true);
+      return thread;
+    });
+    dumper.scheduleAtFixedRate(() -> out.print(report()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    return dumper;
+  }
+
+  // one value per hot path
+  static Map<String, Long> each(java.util.function.ToLongFunction<HotPath> value) {
+    Map<String, Long> values = new LinkedHashMap<>();
+    for (HotPath path : ALL) {
+      values.put(path.name, value.applyAsLong(path));
+    }
+    return values;
+  }
+
+  public Map<String, Long> getCounts() {
+    return each(path -> path.histogram.count());
+  }
+
+  public Map<String, Long> getMedians() {
+    return each(path -> path.histogram.percentile(50));
+  }
+
+  public Map<String, Long> getP99s() {
+    return each(path -> path.histogram.percentile(99));
+  }
+
+  public Map<String, Long> getMaxima() {
+    return each(path -> path.histogram.max.get());
+  }
+
+  public String getReport() {
+    return report();
+  }
+
+  public void reset() {
+    for (HotPath path : ALL) {
+      path.histogram.reset();
+    }
+  }
+}
+
+class ExamplesEngineMetrics {
+  boolean testBuckets(Tester tester) {
+    // exact below 64, then within 1/32 of the value
+    for (long value = 1; value < 1L << 40; value = value * 3 + 1) {
+      long lowest = LatencyHistogram.lowest(LatencyHistogram.bucket(value));
+      if (!tester.checkRange(lowest, value - value / 32, value + 1)) {
+        return false;
+      }
+    }
+    return tester.checkExpect(LatencyHistogram.bucket(63), 63)
+            && tester.checkExpect(LatencyHistogram.bucket(64), 64)
+            && tester.checkExpect(LatencyHistogram.lowest(LatencyHistogram.bucket(1000)), 992L)
+            && tester.checkExpect(LatencyHistogram.bucket(Long.MAX_VALUE) < LatencyHistogram.BUCKETS, true);
+  }
+
+  boolean testPercentiles(Tester tester) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 1000; value++) {
+      histogram.record(value * 1000);
+    }
+    return tester.checkExpect(histogram.count(), 1000L)
+            && tester.checkRange(histogram.percentile(50), 485000L, 500001L)
+            && tester.checkRange(histogram.percentile(99), 960000L, 990001L)
+            && tester.checkExpect(histogram.max.get(), 1000000L)
+            && tester.checkInexact(histogram.mean(), 500500.0, 0.001);
+  }
+
+  boolean testBean(Tester tester) {
+    EngineMetrics bean = new EngineMetrics();
+    EngineMetrics.FIND_EXACT.record(120);
+    boolean counted = bean.getCounts().get("findExact") >= 1;
+    bean.reset();
+    return tester.checkExpect(counted, true)
+            && tester.checkExpect(bean.getCounts().get("findExact"), 0L)
+            && tester.checkExpect(bean.getCounts().size(), EngineMetrics.ALL.length)
+            && tester.checkExpect(bean.getReport().contains("processGuess"), true);
+  }
+}
@@ -0,0 +1,24 @@
+package mastermind;
+
+import java.util.Map;
+
+// the engine's hot path timings over JMX, keyed by hot path; JMX only publishes public interfaces
+public interface EngineMetricsMXBean {
+  // how many times each hot path ran
+  Map<String, Long> getCounts();
+
+  // the median of each hot path
+  Map<String, Long> getMedians();
+
+  // the 99th percentile of each hot path
+  Map<String, Long> getP99s();
+
+  // the largest value seen on each hot path
+  Map<String, Long> getMaxima();
+
+  // the text dump
+  String getReport();
+
+  // starts every count again
+  void reset();
+}
@@ -0,0 +1,511 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+// an append-only file of finished games, so a game's history outlives endOfWorld
+//   file:   magic, version, then records back to back
+//   record: varint body length, then the body
+//   body:   flags, colors, [colors RGB varints unless the standard palette], pegs, maxGuesses,
+//           start millis, secret color indices, guess count, and per guess:
+//           millis since start, color indices, correct, outOfPlace
+// every number is an unsigned varint, so small color indices take a single byte
+class GameLog {
+  static final int MAGIC = 0x4D4D474C; // "MMGL"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 5;
+
+  static final int FLAG_DUPLICATES = 1;
+  static final int FLAG_CUSTOM_PALETTE = 2;
+
+  // where finished interactive games are recorded, or null when they are not; started with
+  // -Dmastermind.log=<file>
+  static volatile GameLogWriter sink = openSink(System.getProperty("mastermind.log"));
+
+  // a writer appending to the file and closed when the JVM exits, or null without a file
+  static GameLogWriter openSink(String path) {
+    if (path == null) {
+      return null;
+    }
+    try {
+      GameLogWriter writer = new GameLogWriter(new File(path));
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          writer.close();
+        } catch (IOException e) {
+          // the games already flushed are in the file
+        }
+      }, "game-log-close"));
+      return writer;
+    } catch (IOException e) {
+      System.err.println("games are not logged: " + e);
+      return null;
+    }
+  }
+
+  // records a finished game to the sink, if there is one, and flushes it so a game that
+  // ends the program is kept
+  static void finished(MMGame game) {
+    GameLogWriter writer = sink;
+    if (writer != null) {
+      GameClock clock = GameClock.stop(game);
+      try {
+        if (clock == null) {
+          // a game started before the sink was set has no clock, so its finish time stands in
+          writer.record(game, System.currentTimeMillis(), null);
+        } else {
+          writer.record(game, clock.startMillis, clock.guessMillis(game.past.length()));
+        }
+        writer.flush();
+      } catch (IOException e) {
+        // a game must not fail because its log did
+        sink = null;
+      }
+    }
+  }
+
+  // the colors of the list, in order
+  static Color[] colorsOf(ILoColor colors) {
+    Color[] array = new Color[colors.length()];
+    colors.copyInto(array, 0);
+    return array;
+  }
+
+  // adds an unsigned varint
+  static void putVarint(ByteBuffer buffer, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  // reads an unsigned varint
+  static long getVarint(ByteBuffer buffer) {
+    long value = 0;
+    int shift = 0;
+    byte next;
+    do {
+      next = buffer.get();
+      value |= (long) (next & 0x7F) << shift;
+      shift += 7;
+    } while (next < 0);
+    return value;
+  }
+
+  // reads every record of the file in order, holding only one record at a time
+  static void forEach(File file, Consumer<GameRecord> action) throws IOException {
+    try (GameLogReader reader = new GameLogReader(file)) {
+      GameRecord record = reader.next();
+      while (record != null) {
+        action.accept(record);
+        record = reader.next();
+      }
+    }
+  }
+
+  // how many guesses the logged games took
+  static SimulationReport summarize(File file) throws IOException {
+    SimulationReport report = new SimulationReport(0);
+    forEach(file, record -> report.recordResult(record.isWon(), record.guessCount()));
+    return report;
+  }
+}
+
+// when an interactive game started and when each of its guesses was made. The clock is kept
+// beside the game rather than in it, so games still compare by their boards; every state of
+// a game shares its Random, which keys the clock, and it goes when the game is collected
+class GameClock {
+  static Map<Random, GameClock> clocks = Collections.synchronizedMap(new WeakHashMap<>());
+
+  long startMillis;
+  // guessMillis[i] is when the ith guess was submitted
+  long[] guessMillis = new long[8];
+
+  GameClock(long startMillis) {
+    this.startMillis = startMillis;
+  }
+
+  // starts the game's clock, if its games are being logged
+  static void start(MMGame game) {
+    if (GameLog.sink != null) {
+      clocks.put(game.rand, new GameClock(System.currentTimeMillis()));
+    }
+  }
+
+  // notes that the game's current input is being submitted now
+  static void guessed(MMGame game) {
+    GameClock clock = clocks.get(game.rand);
+    if (clock != null) {
+      synchronized (clock) {
+        int guess = game.past.length();
+        if (guess >= clock.guessMillis.length) {
+          clock.guessMillis = Arrays.copyOf(clock.guessMillis, Math.max(guess + 1, 2 * clock.guessMillis.length));
+        }
+        clock.guessMillis[guess] = System.currentTimeMillis();
+      }
+    }
+  }
+
+  // the game's clock, no longer kept, or null when it had none
+  static GameClock stop(MMGame game) {
+    return clocks.remove(game.rand);
+  }
+
+  // the times of the first count guesses
+  synchronized long[] guessMillis(int count) {
+    return Arrays.copyOf(this.guessMillis, count);
+  }
+}
+
+// appends records through a buffer that goes to the channel in large writes
+class GameLogWriter implements Closeable {
+  static final int BUFFER_SIZE = 1 << 16;
+
+  FileChannel channel;
+  ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  // a record is built here first, so its length can lead it
+  ByteBuffer body = ByteBuffer.allocate(BUFFER_SIZE);
+  // the palette of the last game recorded and its colors, null when it was the default one;
+  // a simulation's games share their palette, so it is only compared once
+  ILoColor palette;
+  Color[] customColors;
+
+  GameLogWriter(File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    if (this.channel.size() == 0) {
+      this.buffer.putInt(GameLog.MAGIC).put((byte) GameLog.VERSION);
+    }
+  }
+
+  // appends a finished game; guessMillis holds each guess's time, or is null when unknown
+  synchronized void record(MMGame game, long startMillis, long[] guessMillis) throws IOException {
+    int pegs = game.sequenceLen;
+    int guesses = game.past.length();
+    int colors = game.possibleColors.length();
+    if (game.possibleColors != this.palette) {
+      Color[] used = GameLog.colorsOf(game.possibleColors);
+      boolean custom = !Arrays.equals(used, GameLog.colorsOf(MMGame.makePalette(colors)));
+      this.palette = game.possibleColors;
+      this.customColors = custom ? used : null;
+    }
+    boolean custom = this.customColors != null;
+    // a generous bound: ten bytes per number
+    int bound = 10 * (8 + colors + pegs + guesses * (pegs + 3));
+    if (this.body.capacity() < bound) {
+      this.body = ByteBuffer.allocate(bound);
+    }
+
+    ByteBuffer out = this.body;
+    out.clear();
+    int flags = (game.duplicatesAllowed ? GameLog.FLAG_DUPLICATES : 0) | (custom ? GameLog.FLAG_CUSTOM_PALETTE : 0);
+    GameLog.putVarint(out, flags);
+    GameLog.putVarint(out, colors);
+    if (custom) {
+      for (Color color : this.customColors) {
+        GameLog.putVarint(out, color.getRGB() & 0xFFFFFFFFL);
+      }
+    }
+    GameLog.putVarint(out, pegs);
+    GameLog.putVarint(out, game.maxGuesses);
+    GameLog.putVarint(out, startMillis);
+    this.putSequence(out, game.correct, game.possibleColors);
+    GameLog.putVarint(out, guesses);
+    for (int i = 0; i < guesses; i++) {
+      Guess guess = game.past.getIndex(i);
+      GameLog.putVarint(out, guessMillis == null ? 0 : Math.max(0, guessMillis[i] - startMillis));
+      this.putSequence(out, guess.sequence, game.possibleColors);
+      GameLog.putVarint(out, guess.correct);
+      GameLog.putVarint(out, guess.outOfPlace);
+    }
+    out.flip();
+
+    if (this.buffer.remaining() < out.remaining() + 5) {
+      this.flush();
+      if (this.buffer.capacity() < out.remaining() + 5) {
+        this.buffer = ByteBuffer.allocate(out.remaining() + 5);
+      }
+    }
+    GameLog.putVarint(this.buffer, out.remaining());
+    this.buffer.put(out);
+  }
+
+  // writes each color's palette index
+  void putSequence(ByteBuffer out, ILoColor sequence, ILoColor palette) {
+    for (int i = 0; i < sequence.length(); i++) {
+      GameLog.putVarint(out, palette.indexOf(sequence.getIndex(i)));
+    }
+  }
+
+  // sends the buffered records to the file
+  synchronized void flush() throws IOException {
+    this.buffer.flip();
+    MappedScoreTable.writeFully(this.channel, this.buffer);
+    this.buffer.clear();
+  }
+
+  public synchronized void close() throws IOException {
+    this.flush();
+    this.channel.close();
+  }
+}
+
+// one logged game, with colors as palette indices
+class GameRecord {
+  boolean duplicatesAllowed;
+  ILoColor possibleColors;
+  int sequenceLen;
+  int maxGuesses;
+  long startMillis;
+  int[] secret;
+  // guesses[i] holds the indices of the ith guess
+  int[][] guesses;
+  int[] correct;
+  int[] outOfPlace;
+  // millis since the start, zero when unknown
+  long[] guessMillis;
+
+  // the number of guesses played
+  int guessCount() {
+    return this.guesses.length;
+  }
+
+  // did the last guess match the secret
+  boolean isWon() {
+    int count = this.guessCount();
+    return count > 0 && this.correct[count - 1] == this.sequenceLen;
+  }
+
+  // the colors named by the indices
+  ILoColor colors(int[] indices) {
+    ILoColor sequence = new MtLoColor();
+    for (int i = indices.length - 1; i >= 0; i--) {
+      sequence = new ConsLoColor(this.possibleColors.getIndex(indices[i]), sequence);
+    }
+    return sequence;
+  }
+
+  // the game after the first count guesses, rescored as it is replayed
+  MMGame replay(int count) {
+    MMGame game = new MMGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses, this.possibleColors,
+            this.colors(this.secret), new MtLoColor(), new MtLoGuess(), new Random());
+    for (int i = 0; i < count; i++) {
+      game = game.replaceCurrentAndPlace(this.colors(this.guesses[i]), game.past).processGuess();
+    }
+    return game;
+  }
+}
+
+// streams records from a log through a fixed buffer, so logs of any size can be read
+class GameLogReader implements Closeable {
+  static final int BUFFER_SIZE = 1 << 16;
+
+  FileChannel channel;
+  ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  boolean ended;
+
+  GameLogReader(File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.buffer.flip();
+    if (!this.fill(GameLog.HEADER_SIZE) || this.buffer.getInt() != GameLog.MAGIC) {
+      throw new IOException("not a game log: " + file);
+    }
+    if (this.buffer.get() != GameLog.VERSION) {
+      throw new IOException("unsupported game log version: " + file);
+    }
+  }
+
+  // makes at least count bytes readable, false if the file ends first
+  boolean fill(int count) throws IOException {
+    if (this.buffer.remaining() >= count) {
+      return true;
+    }
+    if (this.buffer.capacity() < count) {
+      ByteBuffer bigger = ByteBuffer.allocate(count);
+      bigger.put(this.buffer);
+      this.buffer = bigger;
+    } else {
+      this.buffer.compact();
+    }
+    while (this.buffer.position() < count && !this.ended) {
+      if (this.channel.read(this.buffer) < 0) {
+        this.ended = true;
+      }
+    }
+    this.buffer.flip();
+    return this.buffer.remaining() >= count;
+  }
+
+  // the next record, or null at the end of the log
+  GameRecord next() throws IOException {
+    if (!this.fill(1)) {
+      return null;
+    }
+    // a length varint is at most five bytes
+    this.fill(5);
+    int length = (int) GameLog.getVarint(this.buffer);
+    if (!this.fill(length)) {
+      throw new IOException("truncated game log record");
+    }
+    ByteBuffer in = this.buffer;
+    int end = in.position() + length;
+
+    GameRecord record = new GameRecord();
+    int flags = (int) GameLog.getVarint(in);
+    record.duplicatesAllowed = (flags & GameLog.FLAG_DUPLICATES) != 0;
+    int colors = (int) GameLog.getVarint(in);
+    if ((flags & GameLog.FLAG_CUSTOM_PALETTE) != 0) {
+      Color[] palette = new Color[colors];
+      for (int i = 0; i < colors; i++) {
+        palette[i] = new Color((int) GameLog.getVarint(in), true);
+      }
+      ILoColor list = new MtLoColor();
+      for (int i = colors - 1; i >= 0; i--) {
+        list = new ConsLoColor(palette[i], list);
+      }
+      record.possibleColors = list;
+    } else {
+      record.possibleColors = MMGame.makePalette(colors);
+    }
+    record.sequenceLen = (int) GameLog.getVarint(in);
+    record.maxGuesses = (int) GameLog.getVarint(in);
+    record.startMillis = GameLog.getVarint(in);
+    record.secret = this.getSequence(in, record.sequenceLen);
+    int guesses = (int) GameLog.getVarint(in);
+    record.guesses = new int[guesses][];
+    record.correct = new int[guesses];
+    record.outOfPlace = new int[guesses];
+    record.guessMillis = new long[guesses];
+    for (int i = 0; i < guesses; i++) {
+      record.guessMillis[i] = GameLog.getVarint(in);
+      record.guesses[i] = this.getSequence(in, record.sequenceLen);
+      record.correct[i] = (int) GameLog.getVarint(in);
+      record.outOfPlace[i] = (int) GameLog.getVarint(in);
+    }
+    if (in.position() != end) {
+      throw new IOException("malformed game log record");
+    }
+    return record;
+  }
+
+  // reads pegs color indices
+  int[] getSequence(ByteBuffer in, int pegs) {
+    int[] indices = new int[pegs];
+    for (int i = 0; i < pegs; i++) {
+      indices[i] = (int) GameLog.getVarint(in);
+    }
+    return indices;
+  }
+
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
+
+class ExamplesGameLog {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+
+  // a finished game played by the solver
+  MMGame solved(long seed) {
+    MMGame start = new MMGame(true, 4, 10, MMGame.makePalette(6), new MtLoColor(), new MtLoGuess(), new Random(seed));
+    return new KnuthSolver(classic).play(start);
+  }
+
+  boolean testVarint(Tester tester) {
+    ByteBuffer buffer = ByteBuffer.allocate(32);
+    GameLog.putVarint(buffer, 5);
+    GameLog.putVarint(buffer, 300);
+    GameLog.putVarint(buffer, Long.MAX_VALUE);
+    buffer.flip();
+    return tester.checkExpect(GameLog.getVarint(buffer), 5L)
+            && tester.checkExpect(GameLog.getVarint(buffer), 300L)
+            && tester.checkExpect(GameLog.getVarint(buffer), Long.MAX_VALUE)
+            && tester.checkExpect(buffer.remaining(), 0);
+  }
+
+  boolean testRoundTrip(Tester tester) throws IOException {
+    File file = File.createTempFile("games", ".mmgl");
+    file.delete();
+    MMGame first = this.solved(1);
+    MMGame second = this.solved(2);
+    try (GameLogWriter writer = new GameLogWriter(file)) {
+      writer.record(first, 1000, null);
+    }
+    // reopening appends after the earlier records
+    try (GameLogWriter writer = new GameLogWriter(file)) {
+      writer.record(second, 2000, new long[] {2010, 2020, 2030, 2040, 2050, 2060});
+    }
+    GameLogReader reader = new GameLogReader(file);
+    GameRecord one = reader.next();
+    GameRecord two = reader.next();
+    boolean ended = reader.next() == null;
+    reader.close();
+    return tester.checkExpect(ended, true)
+            && tester.checkExpect(one.replay(one.guessCount()).past, first.past)
+            && tester.checkExpect(one.replay(one.guessCount()).correct, first.correct)
+            && tester.checkExpect(two.guessCount(), second.past.length())
+            && tester.checkExpect(two.guessMillis[0], 10L)
+            && tester.checkExpect(two.startMillis, 2000L)
+            && tester.checkExpect(GameLog.summarize(file).games, 2L);
+  }
+
+  boolean testPalettes(Tester tester) throws IOException {
+    // the palette is compared once per palette, and a custom one after a default one, or a
+    // default one after it, still records as it is
+    File file = File.createTempFile("games", ".mmgl");
+    file.delete();
+    ILoColor reversed = new ConsLoColor(Color.GREEN, new ConsLoColor(Color.BLUE, new MtLoColor()));
+    MMGame custom = new MMGame(true, 2, 5, reversed, new MtLoColor(), new MtLoGuess(), new Random(1));
+    try (GameLogWriter writer = new GameLogWriter(file)) {
+      writer.record(this.solved(1), 1000, null);
+      writer.record(custom, 1000, null);
+      writer.record(this.solved(2), 1000, null);
+    }
+    GameLogReader reader = new GameLogReader(file);
+    GameRecord first = reader.next();
+    GameRecord second = reader.next();
+    GameRecord third = reader.next();
+    reader.close();
+    return tester.checkExpect(first.possibleColors, MMGame.makePalette(6))
+            && tester.checkExpect(second.possibleColors, reversed)
+            && tester.checkExpect(third.possibleColors, MMGame.makePalette(6));
+  }
+
+  boolean testInteractiveGame(Tester tester) throws IOException {
+    // a game played through keys is logged when it ends, with its start and guess times
+    File file = File.createTempFile("played", ".mmgl");
+    file.delete();
+    GameLogWriter writer = new GameLogWriter(file);
+    GameLog.sink = writer;
+    long before = System.currentTimeMillis();
+    MMGame game = new MMGame(true, 2, 3, MMGame.makePalette(6));
+    long miss = PackedCode.pack(game.correct, game.possibleColors) == 0x05L ? 0x04L : 0x05L;
+    MMGame guessed = (MMGame) game.replaceCurrentAndPlace(PackedCode.unpack(miss, 2, game.possibleColors),
+            game.past).onKeyEvent("enter");
+    guessed.replaceCurrentAndPlace(game.correct, guessed.past).onKeyEvent("enter");
+    GameLog.sink = null;
+    writer.close();
+    GameLogReader reader = new GameLogReader(file);
+    GameRecord played = reader.next();
+    reader.close();
+    return tester.checkExpect(played.guessCount(), 2)
+            && tester.checkExpect(played.startMillis >= before, true)
+            && tester.checkRange(played.guessMillis[1], 0L, System.currentTimeMillis() - before + 1)
+            && tester.checkExpect(played.isWon(), true)
+            && tester.checkExpect(GameClock.clocks.containsKey(game.rand), false);
+  }
+}
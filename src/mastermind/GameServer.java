@@ -0,0 +1,555 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+// the games of every session; games are immutable, so an update is a compare-and-set
+// of the session's reference and no session ever takes a lock
+class SessionStore {
+  ConcurrentHashMap<Long, AtomicReference<MMGame>> sessions = new ConcurrentHashMap<>();
+  AtomicLong nextId = new AtomicLong(1);
+
+  // starts a session with the given game
+  long open(MMGame game) {
+    long id = this.nextId.getAndIncrement();
+    this.sessions.put(id, new AtomicReference<>(game));
+    return id;
+  }
+
+  // the session's game
+  MMGame get(long id) {
+    return this.reference(id).get();
+  }
+
+  // applies the update to the session's game, retrying if another update won the race
+  MMGame update(long id, UnaryOperator<MMGame> change) {
+    return this.reference(id).updateAndGet(change);
+  }
+
+  // ends the session
+  void close(long id) {
+    if (this.sessions.remove(id) == null) {
+      throw new IllegalArgumentException("no such session");
+    }
+  }
+
+  // ends whichever of the sessions are still open
+  void closeAll(Iterable<Long> ids) {
+    for (long id : ids) {
+      this.sessions.remove(id);
+    }
+  }
+
+  // the number of open sessions
+  int size() {
+    return this.sessions.size();
+  }
+
+  // the session's reference, or an error for unknown sessions
+  AtomicReference<MMGame> reference(long id) {
+    AtomicReference<MMGame> game = this.sessions.get(id);
+    if (game == null) {
+      throw new IllegalArgumentException("no such session");
+    }
+    return game;
+  }
+}
+
+// one request line in, one response line out:
+//   NEW colors pegs maxGuesses duplicates [seed]  ->  OK id
+//   KEY id color                                  ->  OK currentLength
+//   BACK id                                       ->  OK currentLength
+//   ENTER id                                      ->  FB exact outOfPlace PLAYING|WON|LOST
+//   GUESS id color ... color                      ->  FB exact outOfPlace PLAYING|WON|LOST
+//   END id                                        ->  OK
+// colors are numbered from 1 like the keys of the game, errors answer ERR message; a game
+// is at most WideCode's colors and pegs and MAX_GUESSES guesses, so no request can make the
+// server build something huge
+class GameProtocol {
+  static final int MAX_GUESSES = 1000;
+
+  SessionStore store;
+
+  GameProtocol(SessionStore store) {
+    this.store = store;
+  }
+
+  // answers one request that is not tied to a connection
+  String handle(String line) {
+    return this.handle(line, new HashSet<>());
+  }
+
+  // answers one request, keeping the sessions the connection opened and has not ended
+  String handle(String line, Set<Long> owned) {
+    String[] words = line.trim().split("\\s+");
+    try {
+      switch (words[0]) {
+        case "NEW":
+          String opened = this.open(words);
+          owned.add(Long.parseLong(opened.substring(3)));
+          return opened;
+        case "KEY":
+          return this.key(words);
+        case "BACK":
+          return "OK " + this.store.update(this.id(words), MMGame::removeLastGuess).current.length();
+        case "ENTER":
+          return this.submit(this.id(words), null);
+        case "GUESS":
+          return this.submit(this.id(words), Arrays.copyOfRange(words, 2, words.length));
+        case "END":
+          this.store.close(this.id(words));
+          owned.remove(this.id(words));
+          return "OK";
+        default:
+          return "ERR unknown command";
+      }
+    } catch (IllegalArgumentException | IllegalStateException | IndexOutOfBoundsException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  // starts a game
+  String open(String[] words) {
+    int colors = Integer.parseInt(words[1]);
+    int pegs = Integer.parseInt(words[2]);
+    int maxGuesses = Integer.parseInt(words[3]);
+    if (colors > WideCode.MAX_COLORS) {
+      throw new IllegalArgumentException("too many colors");
+    } else if (pegs > WideCode.MAX_PEGS) {
+      throw new IllegalArgumentException("too many pegs");
+    } else if (maxGuesses > MAX_GUESSES) {
+      throw new IllegalArgumentException("too many guesses");
+    }
+    boolean duplicatesAllowed = words[4].equals("1") || words[4].equals("true");
+    Random rand = words.length > 5 ? new Random(Long.parseLong(words[5])) : new Random();
+    MMGame game = new MMGame(duplicatesAllowed, pegs, maxGuesses, MMGame.makePalette(colors),
+            new MtLoColor(), new MtLoGuess(), rand);
+    return "OK " + this.store.open(game);
+  }
+
+  // adds one color to the current guess
+  String key(String[] words) {
+    int color = Integer.parseInt(words[2]);
+    MMGame game = this.store.update(this.id(words), g -> {
+      if (g.isOver() || g.current.length() == g.sequenceLen) {
+        return g;
+      }
+      return g.appendToCurrent(g.possibleColors.getIndex(color - 1));
+    });
+    return "OK " + game.current.length();
+  }
+
+  // scores the given colors, or the current guess when there are none
+  String submit(long id, String[] colors) {
+    MMGame game = this.store.update(id, g -> {
+      if (g.isOver()) {
+        throw new IllegalStateException("game is over");
+      }
+      MMGame withGuess = colors == null ? g : g.replaceCurrentAndPlace(this.parseGuess(g, colors), g.past);
+      if (withGuess.current.length() != g.sequenceLen) {
+        throw new IllegalStateException("guess is not full");
+      }
+      return withGuess.processGuess();
+    });
+    Guess last = game.past.getIndex(game.past.length() - 1);
+    String state = game.isWon() ? "WON" : game.isOver() ? "LOST" : "PLAYING";
+    return "FB " + last.correct + " " + last.outOfPlace + " " + state;
+  }
+
+  // the colors named by the numbers
+  ILoColor parseGuess(MMGame game, String[] colors) {
+    ILoColor guess = new MtLoColor();
+    for (int i = colors.length - 1; i >= 0; i--) {
+      guess = new ConsLoColor(game.possibleColors.getIndex(Integer.parseInt(colors[i]) - 1), guess);
+    }
+    return guess;
+  }
+
+  // the session named by the request
+  long id(String[] words) {
+    return Long.parseLong(words[1]);
+  }
+}
+
+// serves the protocol over TCP from one selector thread; every request is a short
+// compare-and-set on an immutable game, so answering inline keeps the loop responsive
+class GameServer implements Runnable {
+  static final int BUFFER_SIZE = 4096;
+
+  GameProtocol protocol;
+  ServerSocketChannel server;
+  Selector selector;
+  volatile boolean running = true;
+
+  GameServer(GameProtocol protocol, int port) throws IOException {
+    this.protocol = protocol;
+    this.selector = Selector.open();
+    this.server = ServerSocketChannel.open();
+    this.server.bind(new InetSocketAddress("127.0.0.1", port));
+    this.server.configureBlocking(false);
+    this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+  }
+
+  // the port the server listens on
+  int port() throws IOException {
+    return ((InetSocketAddress) this.server.getLocalAddress()).getPort();
+  }
+
+  // the buffers of one client, and the sessions it has open
+  static class Connection {
+    ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+    ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    Set<Long> sessions = new HashSet<>();
+  }
+
+  public void run() {
+    try {
+      while (this.running) {
+        this.selector.select(100);
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (key.isAcceptable()) {
+              this.accept();
+            } else {
+              if (key.isReadable()) {
+                this.read(key);
+              }
+              if (key.isValid() && key.isWritable()) {
+                this.write(key);
+              }
+            }
+          } catch (IOException | RuntimeException e) {
+            // one client failing, however it fails, never takes the others down
+            this.disconnect(key);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("server failed", e);
+    } finally {
+      this.closeAll();
+    }
+  }
+
+  // drops a client along with the sessions it left open
+  void disconnect(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+      // the client is gone either way
+    }
+    if (key.attachment() != null) {
+      this.protocol.store.closeAll(((Connection) key.attachment()).sessions);
+    }
+  }
+
+  // registers a new client
+  void accept() throws IOException {
+    SocketChannel client = this.server.accept();
+    if (client != null) {
+      client.configureBlocking(false);
+      client.socket().setTcpNoDelay(true);
+      client.register(this.selector, SelectionKey.OP_READ, new Connection());
+    }
+  }
+
+  // answers every complete line the client has sent
+  void read(SelectionKey key) throws IOException {
+    SocketChannel client = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    if (client.read(connection.input) < 0) {
+      this.disconnect(key);
+      return;
+    }
+    ByteBuffer input = connection.input;
+    input.flip();
+    int lineStart = 0;
+    for (int i = 0; i < input.limit(); i++) {
+      if (input.get(i) == '\n') {
+        String line = new String(input.array(), lineStart, i - lineStart, StandardCharsets.US_ASCII);
+        String answer = this.protocol.handle(line, connection.sessions) + "\n";
+        connection.output.add(ByteBuffer.wrap(answer.getBytes(StandardCharsets.US_ASCII)));
+        lineStart = i + 1;
+      }
+    }
+    input.position(lineStart);
+    input.compact();
+    if (!input.hasRemaining()) {
+      // a line longer than the buffer is not a request
+      throw new IOException("request line too long");
+    }
+    this.write(key);
+  }
+
+  // sends what it can, and waits to be writable for the rest
+  void write(SelectionKey key) throws IOException {
+    SocketChannel client = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    while (!connection.output.isEmpty()) {
+      ByteBuffer next = connection.output.peek();
+      client.write(next);
+      if (next.hasRemaining()) {
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        return;
+      }
+      connection.output.poll();
+    }
+    key.interestOps(SelectionKey.OP_READ);
+  }
+
+  // stops the loop
+  void stop() {
+    this.running = false;
+    this.selector.wakeup();
+  }
+
+  // closes the server and every client
+  void closeAll() {
+    try {
+      for (SelectionKey key : this.selector.keys()) {
+        key.channel().close();
+      }
+      this.selector.close();
+    } catch (IOException e) {
+      // already shutting down
+    }
+  }
+
+  // serves on the given port until the process is stopped
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+    GameServer server = new GameServer(new GameProtocol(new SessionStore()), port);
+    System.out.println("serving on 127.0.0.1:" + server.port());
+    server.run();
+  }
+}
+
+// plays random games against a server from many client threads and reports latency
+class LoadGenerator {
+  int clients;
+  int gamesPerClient;
+  int colors;
+  int pegs;
+
+  LoadGenerator(int clients, int gamesPerClient, int colors, int pegs) {
+    this.clients = clients;
+    this.gamesPerClient = gamesPerClient;
+    this.colors = colors;
+    this.pegs = pegs;
+  }
+
+  // the request latencies, in nanoseconds and sorted
+  long[] run(int port) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(this.clients);
+    try {
+      List<Future<long[]>> parts = new ArrayList<>();
+      for (int client = 0; client < this.clients; client++) {
+        long seed = client;
+        parts.add(pool.submit(() -> this.playGames(port, seed)));
+      }
+      List<long[]> all = new ArrayList<>();
+      int total = 0;
+      for (Future<long[]> part : parts) {
+        all.add(part.get());
+        total += all.get(all.size() - 1).length;
+      }
+      long[] latencies = new long[total];
+      int next = 0;
+      for (long[] part : all) {
+        System.arraycopy(part, 0, latencies, next, part.length);
+        next += part.length;
+      }
+      Arrays.sort(latencies);
+      return latencies;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // one client's games over one connection, timing every request
+  long[] playGames(int port, long seed) throws IOException {
+    Random rand = new Random(seed);
+    long[] latencies = new long[16];
+    int count = 0;
+    try (Socket socket = new Socket("127.0.0.1", port)) {
+      socket.setTcpNoDelay(true);
+      BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+      PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII), true);
+      for (int game = 0; game < this.gamesPerClient; game++) {
+        String id = request(in, out, "NEW " + this.colors + " " + this.pegs + " 10 1 " + rand.nextLong()).substring(3);
+        String answer = "";
+        while (!answer.endsWith("WON") && !answer.endsWith("LOST")) {
+          StringBuilder guess = new StringBuilder("GUESS ").append(id);
+          for (int peg = 0; peg < this.pegs; peg++) {
+            guess.append(' ').append(1 + rand.nextInt(this.colors));
+          }
+          long start = System.nanoTime();
+          answer = request(in, out, guess.toString());
+          if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+          }
+          latencies[count] = System.nanoTime() - start;
+          count += 1;
+        }
+        request(in, out, "END " + id);
+      }
+    }
+    return Arrays.copyOf(latencies, count);
+  }
+
+  // sends one request line and waits for its answer
+  static String request(BufferedReader in, PrintWriter out, String line) throws IOException {
+    out.println(line);
+    String answer = in.readLine();
+    if (answer == null || answer.startsWith("ERR")) {
+      throw new IOException("request failed: " + line + " -> " + answer);
+    }
+    return answer;
+  }
+
+  // the latency at the given fraction of the sorted latencies
+  static long percentile(long[] sorted, double fraction) {
+    return sorted[(int) Math.min(sorted.length - 1, Math.floor(fraction * sorted.length))];
+  }
+
+  // starts a loopback server and loads it: clients gamesPerClient colors pegs
+  public static void main(String[] args) throws Exception {
+    int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int colors = args.length > 2 ? Integer.parseInt(args[2]) : 6;
+    int pegs = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+    GameServer server = new GameServer(new GameProtocol(new SessionStore()), 0);
+    Thread loop = new Thread(server, "game-server");
+    loop.start();
+    long start = System.nanoTime();
+    long[] latencies = new LoadGenerator(clients, games, colors, pegs).run(server.port());
+    double seconds = (System.nanoTime() - start) / 1e9;
+    server.stop();
+    loop.join();
+    System.out.printf("%d guesses in %.2fs (%.0f/s), p50 %.1fus, p99 %.1fus, max %.1fus%n",
+            latencies.length, seconds, latencies.length / seconds,
+            percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+            latencies[latencies.length - 1] / 1e3);
+  }
+}
+
+class ExamplesServer {
+  boolean testProtocol(Tester tester) {
+    GameProtocol protocol = new GameProtocol(new SessionStore());
+    String id = protocol.handle("NEW 6 4 10 1 7").substring(3);
+    return tester.checkExpect(protocol.handle("KEY " + id + " 2"), "OK 1")
+            && tester.checkExpect(protocol.handle("BACK " + id), "OK 0")
+            && tester.checkExpect(protocol.handle("ENTER " + id), "ERR guess is not full")
+            && tester.checkExpect(protocol.handle("GUESS " + id + " 1 1 2 2").startsWith("FB "), true)
+            && tester.checkExpect(protocol.store.get(Long.parseLong(id)).past.length(), 1)
+            && tester.checkExpect(protocol.handle("END " + id), "OK")
+            && tester.checkExpect(protocol.handle("BACK " + id), "ERR no such session")
+            && tester.checkExpect(protocol.handle("JUMP"), "ERR unknown command");
+  }
+
+  boolean testWinningGuess(Tester tester) {
+    GameProtocol protocol = new GameProtocol(new SessionStore());
+    long id = Long.parseLong(protocol.handle("NEW 6 4 10 1 7").substring(3));
+    MMGame game = protocol.store.get(id);
+    StringBuilder secret = new StringBuilder();
+    for (int peg = 0; peg < 4; peg++) {
+      secret.append(' ').append(1 + game.possibleColors.indexOf(game.correct.getIndex(peg)));
+    }
+    return tester.checkExpect(protocol.handle("GUESS " + id + secret), "FB 4 0 WON")
+            && tester.checkExpect(protocol.handle("GUESS " + id + secret), "ERR game is over");
+  }
+
+  boolean testLimits(Tester tester) {
+    GameProtocol protocol = new GameProtocol(new SessionStore());
+    return tester.checkExpect(protocol.handle("NEW 100000000 4 10 1"), "ERR too many colors")
+            && tester.checkExpect(protocol.handle("NEW 6 400 10 1"), "ERR too many pegs")
+            && tester.checkExpect(protocol.handle("NEW 6 4 2000000000 1"), "ERR too many guesses")
+            && tester.checkExpect(protocol.handle("NEW 64 15 10 1").startsWith("OK "), true)
+            && tester.checkExpect(protocol.store.size(), 1);
+  }
+
+  boolean testDisconnect(Tester tester) throws Exception {
+    // a client that goes away ends its sessions, and one whose request blows up is dropped
+    // while the others are still served
+    GameProtocol protocol = new GameProtocol(new SessionStore()) {
+      String handle(String line, Set<Long> owned) {
+        if (line.equals("CRASH")) {
+          throw new UnsupportedOperationException("crash");
+        }
+        return super.handle(line, owned);
+      }
+    };
+    GameServer server = new GameServer(protocol, 0);
+    Thread loop = new Thread(server);
+    loop.start();
+    String kept;
+    try (Socket staying = new Socket("127.0.0.1", server.port())) {
+      BufferedReader in = new BufferedReader(new InputStreamReader(staying.getInputStream(), StandardCharsets.US_ASCII));
+      PrintWriter out = new PrintWriter(new OutputStreamWriter(staying.getOutputStream(), StandardCharsets.US_ASCII), true);
+      LoadGenerator.request(in, out, "NEW 6 4 10 1 1");
+      try (Socket leaving = new Socket("127.0.0.1", server.port())) {
+        BufferedReader leavingIn = new BufferedReader(new InputStreamReader(leaving.getInputStream(), StandardCharsets.US_ASCII));
+        PrintWriter leavingOut = new PrintWriter(new OutputStreamWriter(leaving.getOutputStream(), StandardCharsets.US_ASCII), true);
+        LoadGenerator.request(leavingIn, leavingOut, "NEW 6 4 10 1 2");
+        leavingOut.println("CRASH");
+        // the server closes the connection rather than answering
+        leavingIn.readLine();
+      }
+      for (int wait = 0; wait < 100 && protocol.store.size() > 1; wait++) {
+        Thread.sleep(10);
+      }
+      kept = LoadGenerator.request(in, out, "NEW 6 4 10 1 3");
+    }
+    for (int wait = 0; wait < 100 && protocol.store.size() > 0; wait++) {
+      Thread.sleep(10);
+    }
+    server.stop();
+    loop.join();
+    return tester.checkExpect(kept.startsWith("OK "), true)
+            && tester.checkExpect(protocol.store.size(), 0);
+  }
+
+  boolean testLoopback(Tester tester) throws Exception {
+    GameServer server = new GameServer(new GameProtocol(new SessionStore()), 0);
+    Thread loop = new Thread(server);
+    loop.start();
+    long[] latencies = new LoadGenerator(4, 5, 6, 4).run(server.port());
+    server.stop();
+    loop.join();
+    return tester.checkExpect(latencies.length >= 20, true)
+            && tester.checkExpect(server.protocol.store.size(), 0);
+  }
+}
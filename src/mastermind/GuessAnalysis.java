@@ -0,0 +1,374 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+// how a guess splits the codes still consistent with a game's feedback
+class PartitionStats {
+  // how many codes are still consistent
+  int candidates;
+  // the most codes any one feedback could leave
+  int worst;
+  // how many different feedbacks the guess could get
+  int partitions;
+  // the codes left on average, over a uniformly drawn secret
+  double expectedSize;
+  // the information the feedback gives, in bits
+  double entropy;
+
+  PartitionStats(int[] sizes) {
+    for (int size : sizes) {
+      this.candidates += size;
+    }
+    for (int size : sizes) {
+      if (size > 0) {
+        double share = (double) size / this.candidates;
+        this.worst = Math.max(this.worst, size);
+        this.partitions += 1;
+        this.expectedSize += share * size;
+        this.entropy -= share * Math.log(share) / Math.log(2);
+      }
+    }
+  }
+
+  public String toString() {
+    return String.format("%d candidates: worst %d, expected %.2f, %.3f bits, %d partitions",
+            this.candidates, this.worst, this.expectedSize, this.entropy, this.partitions);
+  }
+}
+
+// a game's configuration and its guesses with their feedback, sorted, so every order of
+// the same guesses names the same state, since the consistent codes do not depend on it
+class HistoryKey {
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+  // the packed guesses in ascending order, then by feedback, with the feedback each got;
+  // a guess of 15 pegs fills 60 bits, so the two are kept apart
+  long[] guesses;
+  int[] feedbacks;
+
+  HistoryKey(int colors, int pegs, boolean duplicatesAllowed, long[] guesses, int[] feedbacks) {
+    this.colors = colors;
+    this.pegs = pegs;
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.guesses = guesses;
+    this.feedbacks = feedbacks;
+    // histories are short, so an insertion sort keeps the pairs together cheaply
+    for (int i = 1; i < guesses.length; i++) {
+      long guess = guesses[i];
+      int feedback = feedbacks[i];
+      int j = i - 1;
+      while (j >= 0 && (guesses[j] > guess || (guesses[j] == guess && feedbacks[j] > feedback))) {
+        guesses[j + 1] = guesses[j];
+        feedbacks[j + 1] = feedbacks[j];
+        j -= 1;
+      }
+      guesses[j + 1] = guess;
+      feedbacks[j + 1] = feedback;
+    }
+  }
+
+  // the key of the game's past guesses
+  static HistoryKey of(MMGame game) {
+    long[] guesses = new long[game.past.length()];
+    int[] feedbacks = new int[guesses.length];
+    for (int i = 0; i < guesses.length; i++) {
+      Guess guess = game.past.getIndex(i);
+      guesses[i] = PackedCode.pack(guess.sequence, game.possibleColors);
+      feedbacks[i] = PackedCode.feedback(guess.correct, guess.outOfPlace);
+    }
+    return new HistoryKey(game.possibleColors.length(), game.sequenceLen, game.duplicatesAllowed,
+            guesses, feedbacks);
+  }
+
+  public boolean equals(Object other) {
+    if (!(other instanceof HistoryKey)) {
+      return false;
+    }
+    HistoryKey that = (HistoryKey) other;
+    return this.colors == that.colors && this.pegs == that.pegs
+            && this.duplicatesAllowed == that.duplicatesAllowed
+            && Arrays.equals(this.guesses, that.guesses)
+            && Arrays.equals(this.feedbacks, that.feedbacks);
+  }
+
+  public int hashCode() {
+    int hash = (this.colors * 31 + this.pegs) * 2 + (this.duplicatesAllowed ? 1 : 0);
+    return (hash * 31 + Arrays.hashCode(this.guesses)) * 31 + Arrays.hashCode(this.feedbacks);
+  }
+}
+
+// the consistent codes of one history, with the stats of every guess asked about so far
+class Analysis {
+  CodeSpace space;
+  HistoryKey key;
+  int[] candidates;
+  // the same codes a bit each
+  CandidateSet consistent;
+  // -1 until the hint is first asked for
+  int hint = -1;
+  Map<Long, PartitionStats> stats = new HashMap<>();
+
+  Analysis(CodeSpace space, HistoryKey key) {
+    this(space, key, filtered(space, key));
+  }
+
+  // the analysis of codes already filtered by the history
+  Analysis(CodeSpace space, HistoryKey key, CandidateSet consistent) {
+    this.space = space;
+    this.key = key;
+    this.consistent = consistent;
+    this.candidates = consistent.toArray();
+  }
+
+  // the codes of the space consistent with the history; the guesses are filtered in as
+  // packed codes, since a game without repeats still lets the player guess one that is not
+  // in the space
+  static CandidateSet filtered(CodeSpace space, HistoryKey key) {
+    CandidateSet consistent = new CandidateSet(space);
+    for (int i = 0; i < key.guesses.length; i++) {
+      consistent.filterCode(key.guesses[i], key.feedbacks[i], null);
+    }
+    return consistent;
+  }
+
+  // roughly the memory the candidates take, as an int and a bit each
+  long bytes() {
+    return 4L * this.candidates.length + 8L * this.consistent.words.length;
+  }
+
+  // a new solver that has recorded the history; not kept, since its working arrays would
+  // stay alive as long as the analysis is cached
+  KnuthSolver solver() {
+    return new KnuthSolver(this.space, this.consistent, this.key.guesses);
+  }
+
+  // how the packed guess splits the candidates; it need not be in the space
+  synchronized PartitionStats statsFor(long guess) {
+    PartitionStats cached = this.stats.get(guess);
+    if (cached == null) {
+      int[] sizes = new int[PackedCode.FEEDBACK_SIZE];
+      this.consistent.partition(guess, new byte[this.candidates.length], sizes);
+      cached = new PartitionStats(sizes);
+      this.stats.put(guess, cached);
+    }
+    return cached;
+  }
+
+  // the minimax guess, as a packed code
+  synchronized long hint() {
+    if (this.hint == -1) {
+      this.hint = this.solver().nextGuess();
+    }
+    return this.space.code(this.hint);
+  }
+
+  // the index of the minimax guess if it has been found, else -1
+  synchronized int foundHint() {
+    return this.hint;
+  }
+
+  // keeps a minimax guess found by a search elsewhere
+  synchronized void offerHint(int guess) {
+    if (this.hint == -1) {
+      this.hint = guess;
+    }
+  }
+}
+
+// answers how good a guess is for a game's state; many games pass through the same states,
+// so the analyses of the most recently used histories are kept, as many as fit in
+// CACHE_BYTES since an analysis grows with its space
+class GuessAnalyzer {
+  static final long CACHE_BYTES = 64L << 20;
+
+  // in order of use, guarded by its own lock
+  static Map<HistoryKey, Analysis> cache = Collections.synchronizedMap(
+      new LinkedHashMap<HistoryKey, Analysis>(16, 0.75f, true));
+  // the bytes of the cached analyses
+  static long cachedBytes;
+  // a space can hold millions of codes, so only the last few configurations keep theirs
+  static final int SPACES_SIZE = 4;
+
+  static Map<String, CodeSpace> spaces = Collections.synchronizedMap(
+      new LinkedHashMap<String, CodeSpace>(8, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, CodeSpace> eldest) {
+          return this.size() > SPACES_SIZE;
+        }
+      });
+
+  // can the game's codes be enumerated
+  static boolean supports(MMGame game) {
+    int colors = game.possibleColors.length();
+    return PackedCode.fits(colors, game.sequenceLen)
+            && CodeSpace.countCodes(colors, game.sequenceLen, game.duplicatesAllowed) <= CodeSpace.MAX_CODES;
+  }
+
+  // the codes of a configuration, enumerated once
+  static CodeSpace spaceFor(int colors, int pegs, boolean duplicatesAllowed) {
+    String configuration = FeedbackTables.key(colors, pegs, duplicatesAllowed);
+    return spaces.computeIfAbsent(configuration, k -> new CodeSpace(colors, pegs, duplicatesAllowed));
+  }
+
+  // the analysis of the game's history, shared with every game that reached the same state
+  static Analysis analyze(MMGame game) {
+    if (!supports(game)) {
+      throw new IllegalArgumentException("code space is too large to enumerate");
+    }
+    HistoryKey key = HistoryKey.of(game);
+    Analysis analysis = cache.get(key);
+    if (analysis == null) {
+      analysis = new Analysis(spaceFor(key.colors, key.pegs, key.duplicatesAllowed), key);
+      keep(analysis);
+    }
+    return analysis;
+  }
+
+  // the cached analysis of the history, or null
+  static Analysis cached(HistoryKey key) {
+    return cache.get(key);
+  }
+
+  // caches the analysis, dropping the least recently used ones until the rest fit; the
+  // newest stays even when it alone is over the budget
+  static void keep(Analysis analysis) {
+    synchronized (cache) {
+      Analysis replaced = cache.put(analysis.key, analysis);
+      if (replaced != null) {
+        cachedBytes -= replaced.bytes();
+      }
+      cachedBytes += analysis.bytes();
+      Iterator<Analysis> eldest = cache.values().iterator();
+      while (cachedBytes > CACHE_BYTES && cache.size() > 1) {
+        cachedBytes -= eldest.next().bytes();
+        eldest.remove();
+      }
+    }
+  }
+
+  // drops the analysis of the history, if it is cached
+  static void forget(HistoryKey key) {
+    synchronized (cache) {
+      Analysis removed = cache.remove(key);
+      if (removed != null) {
+        cachedBytes -= removed.bytes();
+      }
+    }
+  }
+
+  // how the guess would split the codes still consistent with the game
+  static PartitionStats stats(MMGame game, ILoColor guess) {
+    return analyze(game).statsFor(PackedCode.pack(guess, game.possibleColors));
+  }
+
+  // the guess whose worst feedback leaves the fewest consistent codes
+  static ILoColor hint(MMGame game) {
+    // a registered strategy tree answers without searching
+    ILoColor planned = StrategyTrees.lookup(game);
+    if (planned != null) {
+      return planned;
+    }
+    return PackedCode.unpack(analyze(game).hint(), game.sequenceLen, game.possibleColors);
+  }
+}
+
+class ExamplesAnalysis {
+  ILoColor sixColors = MMGame.makePalette(6);
+  ILoColor BBGG = new ConsLoColor(Color.BLUE, new ConsLoColor(Color.BLUE,
+          new ConsLoColor(Color.GREEN, new ConsLoColor(Color.GREEN, new MtLoColor()))));
+  ILoColor RRYY = new ConsLoColor(Color.RED, new ConsLoColor(Color.RED,
+          new ConsLoColor(Color.YELLOW, new ConsLoColor(Color.YELLOW, new MtLoColor()))));
+  MMGame fresh = new MMGame(true, 4, 10, sixColors, new MtLoColor(), new MtLoGuess(), new Random(3));
+
+  boolean testOpeningStats(Tester tester) {
+    // Knuth's opening leaves at most 256 of the 1296 codes, over 13 feedbacks
+    PartitionStats stats = GuessAnalyzer.stats(fresh, BBGG);
+    return tester.checkExpect(stats.candidates, 1296)
+            && tester.checkExpect(stats.worst, 256)
+            && tester.checkExpect(stats.partitions, 13)
+            && tester.checkRange(stats.entropy, 2.8, 2.9)
+            && tester.checkExpect(GuessAnalyzer.hint(fresh), BBGG);
+  }
+
+  boolean testCache(Tester tester) {
+    // the same guesses in another order reach the same state
+    MMGame first = new MMGame(true, 4, 10, sixColors, fresh.correct, new MtLoColor(),
+            new MtLoGuess().append(new Guess(BBGG, 1, 0)).append(new Guess(RRYY, 0, 1)), fresh.rand);
+    MMGame second = new MMGame(true, 4, 10, sixColors, fresh.correct, new MtLoColor(),
+            new MtLoGuess().append(new Guess(RRYY, 0, 1)).append(new Guess(BBGG, 1, 0)), fresh.rand);
+    return tester.checkExpect(HistoryKey.of(first), HistoryKey.of(second))
+            && tester.checkExpect(GuessAnalyzer.analyze(first) == GuessAnalyzer.analyze(second), true)
+            // every consistent code gave RRYY the feedback it got, so it splits nothing
+            && tester.checkExpect(GuessAnalyzer.stats(first, RRYY).partitions, 1)
+            && tester.checkExpect(GuessAnalyzer.stats(first, RRYY).worst,
+                    GuessAnalyzer.analyze(first).candidates.length)
+            && tester.checkExpect(GuessAnalyzer.hint(first).length(), 4);
+  }
+
+  boolean testRepeatedGuessWithoutRepeats(Tester tester) {
+    // a game without repeats still takes a guess of one color everywhere, which is not in
+    // its space; it filters and is scored like any other
+    ILoColor BBBB = new ConsLoColor(Color.BLUE, new ConsLoColor(Color.BLUE,
+            new ConsLoColor(Color.BLUE, new ConsLoColor(Color.BLUE, new MtLoColor()))));
+    ILoColor RBYG = new ConsLoColor(Color.RED, new ConsLoColor(Color.BLUE,
+            new ConsLoColor(Color.YELLOW, new ConsLoColor(Color.GREEN, new MtLoColor()))));
+    MMGame noRepeats = new MMGame(false, 4, 10, sixColors, RBYG, BBBB, new MtLoGuess(), new Random(3));
+    MMGame guessed = noRepeats.processGuess();
+    HintService.start(guessed).awaitFinished(10_000);
+    MMGame hinted = (MMGame) guessed.onKeyEvent("h");
+    // the secret has one blue, and 4 * 5 * 4 * 3 codes without repeats do
+    return tester.checkExpect(guessed.past.getIndex(0).correct, 1)
+            && tester.checkExpect(GuessAnalyzer.analyze(guessed).candidates.length, 240)
+            && tester.checkExpect(GuessAnalyzer.stats(guessed, BBBB).partitions, 1)
+            && tester.checkExpect(GuessAnalyzer.stats(noRepeats, BBBB).worst, 240)
+            && tester.checkExpect(hinted.current.length(), 4);
+  }
+
+  boolean testLongKey(Tester tester) {
+    // fifteen pegs fill sixty bits, and the key still tells the feedbacks apart
+    ILoColor twoColors = MMGame.makePalette(2);
+    ILoColor allFirst = PackedCode.unpack(0L, 15, twoColors);
+    MMGame wide = new MMGame(true, 15, 10, twoColors, new MtLoColor(), new MtLoGuess(), new Random(3));
+    MMGame one = wide.replaceCurrentAndPlace(new MtLoColor(), new MtLoGuess().append(new Guess(allFirst, 0, 1)));
+    MMGame other = wide.replaceCurrentAndPlace(new MtLoColor(), new MtLoGuess().append(new Guess(allFirst, 0, 2)));
+    return tester.checkExpect(HistoryKey.of(one).equals(HistoryKey.of(other)), false)
+            && tester.checkExpect(HistoryKey.of(one).guesses[0], 0L)
+            && tester.checkExpect(GuessAnalyzer.analyze(one).candidates.length, 15)
+            && tester.checkExpect(GuessAnalyzer.analyze(other).candidates.length, 105);
+  }
+
+  boolean testCacheBudget(Tester tester) {
+    // analyses of a large space crowd out the oldest ones, and a small one still fits after
+    ILoColor twelveColors = MMGame.makePalette(12);
+    MMGame large = new MMGame(true, 6, 10, twelveColors, new MtLoColor(), new MtLoGuess(), new Random(3));
+    Analysis first = GuessAnalyzer.analyze(large);
+    CodeSpace space = GuessAnalyzer.spaceFor(12, 6, true);
+    MMGame game = large;
+    // each leaves over a million candidates, so sixteen are more than the budget
+    for (int i = 0; i < 16; i++) {
+      ILoColor guess = PackedCode.unpack(space.code(i), 6, twelveColors);
+      game = large.replaceCurrentAndPlace(new MtLoColor(), new MtLoGuess().append(new Guess(guess, 0, 0)));
+      GuessAnalyzer.analyze(game);
+    }
+    return tester.checkExpect(GuessAnalyzer.cache.containsKey(first.key), false)
+            && tester.checkExpect(GuessAnalyzer.cache.containsKey(HistoryKey.of(game)), true)
+            && tester.checkRange(GuessAnalyzer.cachedBytes, 0L, GuessAnalyzer.CACHE_BYTES + 1)
+            && tester.checkExpect(GuessAnalyzer.analyze(fresh).candidates.length, 1296);
+  }
+
+  boolean testHintKey(Tester tester) {
+    HintService.start(fresh).awaitFinished(10_000);
+    MMGame hinted = (MMGame) fresh.onKeyEvent("h");
+    return tester.checkExpect(hinted.current, BBGG)
+            && tester.checkExpect(hinted.past, fresh.past);
+  }
+}
@@ -0,0 +1,393 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// the best hint a search has found so far; replaced whole, never changed
+class HintSnapshot {
+  long guess;
+  boolean finished;
+
+  HintSnapshot(long guess, boolean finished) {
+    this.guess = guess;
+    this.finished = finished;
+  }
+}
+
+// looks for a history's minimax hint a slice at a time: the first slices filter the codes
+// by the history a block of words at a time, then each slice scores guesses in the order
+// KnuthSolver.nextGuess does until its time is up, publishes the best so far and puts
+// itself back on the executor, so the answer is the solver's and a cancelled search stops
+// within a slice
+class HintSearch implements Runnable {
+  static final long SLICE_NANOS = 2_000_000L;
+  // words of the candidate bitset filtered between checks of the time
+  static final int FILTER_WORDS = 1 << 8;
+
+  MMGame game;
+  HistoryKey key;
+  Executor executor;
+  long sliceNanos;
+
+  // set up by the first slices, off the calling thread; the codes are filtered by guess
+  // filtering, from word filterWord on
+  CodeSpace space;
+  CandidateSet filtering;
+  int filteringGuess;
+  int filterWord;
+  Analysis analysis;
+  KnuthSolver solver;
+
+  // the next guess to score, and the best scored so far
+  int next;
+  int best = -1;
+  int bestWorst = Integer.MAX_VALUE;
+  int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+
+  // null until the first slice has found any consistent code
+  volatile HintSnapshot snapshot;
+  volatile boolean cancelled;
+  CountDownLatch finished = new CountDownLatch(1);
+
+  HintSearch(MMGame game, Executor executor, long sliceNanos) {
+    this.game = game;
+    this.key = HistoryKey.of(game);
+    this.executor = executor;
+    this.sliceNanos = sliceNanos;
+  }
+
+  // runs a slice, then queues the next one unless the search is over; a search that fails
+  // finishes with no hint rather than leaving every later request waiting on it
+  public void run() {
+    boolean over;
+    try {
+      over = this.cancelled || this.slice();
+    } catch (RuntimeException e) {
+      // whatever was found so far stands as the answer
+      HintSnapshot found = this.snapshot;
+      this.snapshot = found == null ? null : new HintSnapshot(found.guess, true);
+      this.finished.countDown();
+      over = true;
+    }
+    if (!over) {
+      this.executor.execute(this);
+    }
+  }
+
+  // scores guesses for one slice, returns whether the search is over
+  boolean slice() {
+    long end = System.nanoTime() + this.sliceNanos;
+    if (this.solver == null) {
+      if (!this.setUp(end)) {
+        return this.cancelled;
+      }
+      if (this.analysis.foundHint() != -1) {
+        return this.finish(this.analysis.foundHint());
+      }
+      this.solver = this.analysis.solver();
+      if (this.solver.candidateCount == 0) {
+        throw new IllegalStateException("no code is consistent with the feedback");
+      } else if (this.solver.candidateCount <= 2) {
+        return this.finish(this.solver.candidates[0]);
+      }
+      // any consistent code is a hint until something better turns up
+      this.snapshot = new HintSnapshot(this.solver.space.code(this.solver.candidates[0]), false);
+    }
+    KnuthSolver solver = this.solver;
+    int size = solver.space.size();
+    while (this.next < size && !this.cancelled && System.nanoTime() < end) {
+      int guess = this.next;
+      this.next += 1;
+      if (!solver.isWorthScoring(guess)) {
+        continue;
+      }
+      int worst = solver.worstCase(guess, this.bestWorst, this.histogram);
+      if (this.best == -1 || solver.isBetter(guess, worst, this.best, this.bestWorst)) {
+        this.best = guess;
+        this.bestWorst = worst;
+      }
+    }
+    if (this.next == size) {
+      this.analysis.offerHint(this.best);
+      return this.finish(this.best);
+    }
+    if (this.best != -1) {
+      this.snapshot = new HintSnapshot(solver.space.code(this.best), false);
+    }
+    return this.cancelled;
+  }
+
+  // finds or builds the analysis of the history, returns whether it is ready; the filtering
+  // stops at the end of the slice or once cancelled, and carries on from there next slice
+  boolean setUp(long end) {
+    if (this.analysis != null) {
+      return true;
+    }
+    Analysis cached = GuessAnalyzer.cached(this.key);
+    if (cached != null) {
+      this.analysis = cached;
+      return true;
+    }
+    if (this.space == null) {
+      // enumerating the space is the one step done whole, and only once per configuration
+      this.space = GuessAnalyzer.spaceFor(this.key.colors, this.key.pegs, this.key.duplicatesAllowed);
+      this.filtering = new CandidateSet(this.space);
+    }
+    int words = this.filtering.words.length;
+    while (this.filteringGuess < this.key.guesses.length) {
+      if (this.cancelled) {
+        return false;
+      }
+      int to = Math.min(this.filterWord + FILTER_WORDS, words);
+      this.filtering.filterWords(this.key.guesses[this.filteringGuess], this.key.feedbacks[this.filteringGuess],
+              this.filterWord, to);
+      this.filterWord = to;
+      if (to == words) {
+        this.filteringGuess += 1;
+        this.filterWord = 0;
+      }
+      // a block at least per slice, so even the shortest slices get somewhere
+      if (System.nanoTime() >= end && this.filteringGuess < this.key.guesses.length) {
+        return false;
+      }
+    }
+    this.filtering.recount();
+    this.analysis = new Analysis(this.space, this.key, this.filtering);
+    GuessAnalyzer.keep(this.analysis);
+    return true;
+  }
+
+  // publishes the minimax guess
+  boolean finish(int guess) {
+    this.snapshot = new HintSnapshot(this.analysis.space.code(guess), true);
+    this.finished.countDown();
+    return true;
+  }
+
+  // waits up to the given time for the search to finish, returns whether it has
+  boolean awaitFinished(long millis) {
+    try {
+      return this.finished.await(millis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
+
+// keeps hints off the world's thread: a search for the next hint starts as soon as a guess
+// is submitted, asking for a hint shows at once whatever it has found, and ticks swap a
+// hint still on the board, or a row left alone since the key was pressed, for a better one
+// as the search goes on. Submitting a guess replaces the search and backspace cancels it,
+// so stale work never piles up; a search is only ever busy past a cancel while enumerating
+// a space, and the pool gives the next search another thread rather than queue it behind
+class HintService {
+  static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+    Thread thread = new Thread(task, "hint-search");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  static HintSearch active;
+  // the hint last put on the board, refined on ticks while the board still shows it
+  static volatile ILoColor shown;
+
+  // the search for the game's hint, starting one unless it is already running
+  static synchronized HintSearch start(MMGame game) {
+    if (game.isOver() || !GuessAnalyzer.supports(game)) {
+      return null;
+    }
+    HintSearch running = active;
+    if (running != null && !running.cancelled && running.key.equals(HistoryKey.of(game))) {
+      return running;
+    }
+    cancel();
+    active = new HintSearch(game, EXECUTOR, HintSearch.SLICE_NANOS);
+    EXECUTOR.execute(active);
+    return active;
+  }
+
+  // stops the search, and any refining of the hint on the board
+  static synchronized void cancel() {
+    if (active != null) {
+      active.cancelled = true;
+      active = null;
+    }
+    shown = null;
+  }
+
+  // the best hint for the game found so far, or null when there is none yet, in which case
+  // ticks fill the row in once there is
+  static ILoColor hint(MMGame game) {
+    // a registered strategy tree answers without searching
+    ILoColor planned = StrategyTrees.lookup(game);
+    if (planned != null) {
+      return planned;
+    }
+    HintSearch search = start(game);
+    if (search == null) {
+      return null;
+    }
+    HintSnapshot snapshot = search.snapshot;
+    if (snapshot == null) {
+      shown = game.current;
+      return null;
+    }
+    ILoColor hint = PackedCode.unpack(snapshot.guess, game.sequenceLen, game.possibleColors);
+    shown = hint;
+    return hint;
+  }
+
+  // a better hint to replace the one the game shows, or null when there is none
+  static ILoColor refine(MMGame game) {
+    ILoColor onBoard = shown;
+    HintSearch search;
+    synchronized (HintService.class) {
+      search = active;
+    }
+    if (onBoard == null || game.current != onBoard || search == null || search.snapshot == null
+            || !search.key.equals(HistoryKey.of(game))) {
+      return null;
+    }
+    long guess = search.snapshot.guess;
+    if (onBoard.length() == game.sequenceLen && guess == PackedCode.pack(onBoard, game.possibleColors)) {
+      return null;
+    }
+    ILoColor better = PackedCode.unpack(guess, game.sequenceLen, game.possibleColors);
+    shown = better;
+    return better;
+  }
+}
+
+class ExamplesHintService {
+  ILoColor eightColors = MMGame.makePalette(8);
+
+  // an 8 color, 5 peg game after one guess
+  MMGame afterOneGuess() {
+    MMGame fresh = new MMGame(true, 5, 12, eightColors, new MtLoColor(), new MtLoGuess(), new Random(21));
+    return fresh.replaceCurrentAndPlace(PackedCode.unpack(0x00123L, 5, eightColors), fresh.past).processGuess();
+  }
+
+  boolean testSlices(Tester tester) {
+    // short slices reach the solver's own answer, improving along the way; the analysis is
+    // dropped first, since one that knows its hint answers in a single slice
+    MMGame game = this.afterOneGuess();
+    GuessAnalyzer.forget(HistoryKey.of(game));
+    HintSearch search = new HintSearch(game, task -> { }, 100_000L);
+    int slices = 1;
+    while (!search.slice()) {
+      slices += 1;
+      // the first slices only filter, and have no hint to show yet
+      if (search.solver != null
+              && !(tester.checkExpect(search.snapshot != null, true)
+              && tester.checkExpect(search.snapshot.finished, false))) {
+        return false;
+      }
+    }
+    KnuthSolver solver = search.solver;
+    return tester.checkExpect(slices > 1, true)
+            && tester.checkExpect(search.snapshot.finished, true)
+            && tester.checkExpect(search.snapshot.guess, solver.space.code(solver.nextGuess()))
+            && tester.checkExpect(search.awaitFinished(0), true);
+  }
+
+  boolean testCancel(Tester tester) {
+    // a cancelled search stops at its next slice, leaving what it had
+    MMGame game = this.afterOneGuess();
+    HintSearch search = new HintSearch(game, task -> { }, 100_000L);
+    search.slice();
+    int reached = search.next;
+    search.cancelled = true;
+    boolean over = search.slice();
+    MMGame started = this.afterOneGuess();
+    HintSearch running = HintService.start(started);
+    boolean reused = HintService.start(started) == running;
+    HintService.cancel();
+    return tester.checkExpect(over, true)
+            && tester.checkExpect(search.next, reached)
+            && tester.checkExpect(reused, true)
+            && tester.checkExpect(running.cancelled, true)
+            && tester.checkExpect(HintService.active, null);
+  }
+
+  boolean testFailure(Tester tester) {
+    // feedback no code could give fails the search, which finishes without a hint instead
+    // of leaving later requests to wait on it
+    ILoColor opening = PackedCode.unpack(0x00123L, 5, eightColors);
+    MMGame fresh = new MMGame(true, 5, 12, eightColors, new MtLoColor(), new MtLoGuess(), new Random(21));
+    MMGame impossible = fresh.replaceCurrentAndPlace(new MtLoColor(),
+            new MtLoGuess().append(new Guess(opening, 0, 5)).append(new Guess(opening, 0, 0)));
+    HintSearch search = new HintSearch(impossible, task -> { }, 100_000L);
+    // the executor does nothing, so the slices are run here until the search gives up
+    for (int slices = 0; slices < 100 && !search.awaitFinished(0); slices++) {
+      search.run();
+    }
+    return tester.checkExpect(search.awaitFinished(0), true)
+            && tester.checkExpect(search.snapshot, null);
+  }
+
+  boolean testSetUpSlices(Tester tester) {
+    // the codes are filtered a block of words per slice, and a cancel stops the filtering
+    MMGame game = this.afterOneGuess();
+    GuessAnalyzer.forget(HistoryKey.of(game));
+    HintSearch stopped = new HintSearch(game, task -> { }, 0);
+    boolean firstOver = stopped.slice();
+    int reached = stopped.filterWord;
+    stopped.cancelled = true;
+    boolean cancelledOver = stopped.slice();
+    HintSearch finished = new HintSearch(game, task -> { }, 100_000L);
+    int slices = 1;
+    while (!finished.slice()) {
+      slices += 1;
+    }
+    return tester.checkExpect(firstOver, false)
+            && tester.checkExpect(reached, HintSearch.FILTER_WORDS)
+            && tester.checkExpect(cancelledOver, true)
+            && tester.checkExpect(stopped.filterWord, reached)
+            && tester.checkExpect(stopped.analysis, null)
+            && tester.checkExpect(slices > 2, true)
+            && tester.checkExpect(finished.analysis.candidates.length,
+                    new Analysis(finished.space, finished.key).candidates.length)
+            && tester.checkExpect(GuessAnalyzer.cached(finished.key), finished.analysis);
+  }
+
+  boolean testHintWithoutWaiting(Tester tester) {
+    // before the search has anything the key leaves the row alone, and a tick fills it in
+    // once the search has found a hint
+    MMGame game = this.afterOneGuess();
+    HintService.cancel();
+    HintSearch search = new HintSearch(game, task -> { }, 100_000L);
+    HintService.active = search;
+    MMGame pressed = (MMGame) game.onKeyEvent("h");
+    while (!search.slice()) {
+      // runs the search here instead of on the executor
+    }
+    MMGame ticked = (MMGame) pressed.onTick();
+    HintService.cancel();
+    return tester.checkExpect(pressed, game)
+            && tester.checkExpect(PackedCode.pack(ticked.current, eightColors), search.snapshot.guess);
+  }
+
+  boolean testKeysAndTicks(Tester tester) {
+    // the hint key shows the finished search's answer, and ticks swap an older hint for it
+    MMGame game = this.afterOneGuess();
+    HintSearch search = HintService.start(game);
+    search.awaitFinished(10_000);
+    MMGame hinted = (MMGame) game.onKeyEvent("h");
+    ILoColor stale = PackedCode.unpack(0x00000L, 5, eightColors);
+    HintService.shown = stale;
+    MMGame showingStale = hinted.replaceCurrentAndPlace(stale, hinted.past);
+    MMGame refined = (MMGame) showingStale.onTick();
+    MMGame edited = (MMGame) refined.onKeyEvent("backspace");
+    return tester.checkExpect(PackedCode.pack(hinted.current, eightColors), search.snapshot.guess)
+            && tester.checkExpect(refined.current, hinted.current)
+            && tester.checkExpect(edited.onTick(), edited)
+            && tester.checkExpect(HintService.active, null);
+  }
+}
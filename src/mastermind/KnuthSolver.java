@@ -0,0 +1,265 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// plays a configuration with Knuth's minimax rule: keeps the codes still consistent with
+// the feedback so far and guesses the code whose worst feedback leaves the fewest of them
+class KnuthSolver implements IGuessStrategy {
+  CodeSpace space;
+  IScorer scorer;
+
+  // the consistent codes are the first candidateCount entries
+  int[] candidates;
+  int candidateCount;
+  // the same codes a bit each, filtered a block at a time
+  CandidateSet consistent;
+
+  // how many past guesses have been filtered in
+  int recorded;
+  // a bit per color used by any of those guesses
+  int usedColors;
+  // those guesses, packed
+  long[] history = new long[8];
+  // the relabelings those guesses allow, null before the first one
+  Symmetry symmetry;
+
+  int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+
+  // null when the search runs on the calling thread
+  ForkJoinPool pool;
+
+  KnuthSolver(CodeSpace space, IScorer scorer, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least one");
+    }
+    this.space = space;
+    this.scorer = scorer;
+    this.pool = parallelism == 1 ? null : SolverPools.withParallelism(parallelism);
+
+    this.candidateCount = space.size();
+    this.candidates = new int[this.candidateCount];
+    this.consistent = new CandidateSet(space);
+    for (int i = 0; i < this.candidateCount; i++) {
+      this.candidates[i] = i;
+    }
+  }
+
+  KnuthSolver(CodeSpace space, IScorer scorer) {
+    this(space, scorer, 1);
+  }
+
+  KnuthSolver(CodeSpace space) {
+    this(space, ScoreTable.bestFor(space));
+  }
+
+  // a solver that has already recorded the packed guesses, which left the given codes
+  KnuthSolver(CodeSpace space, CandidateSet consistent, long[] guesses) {
+    this.space = space;
+    this.scorer = space;
+    this.consistent = new CandidateSet(consistent);
+    this.candidates = consistent.toArray();
+    this.candidateCount = this.candidates.length;
+    for (long guess : guesses) {
+      this.remember(guess);
+    }
+  }
+
+  // drops every candidate that would not have given this feedback to the guess
+  void record(int guess, int feedback) {
+    this.recordCode(this.space.code(guess), feedback);
+  }
+
+  // records a packed guess, which need not be in the space when colors cannot repeat
+  void recordCode(long guess, int feedback) {
+    this.consistent.filterCode(guess, feedback, this.pool);
+    this.candidateCount = this.consistent.copyInto(this.candidates);
+    this.remember(guess);
+  }
+
+  // adds a packed guess to the history and the symmetries it allows
+  void remember(long guess) {
+    if (this.recorded == this.history.length) {
+      this.history = Arrays.copyOf(this.history, this.recorded * 2);
+    }
+    this.history[this.recorded] = guess;
+    this.recorded += 1;
+    for (int peg = 0; peg < this.space.pegs; peg++) {
+      this.usedColors |= 1 << PackedCode.colorAt(guess, this.space.pegs, peg);
+    }
+    this.symmetry = this.symmetry == null
+            ? new Symmetry(this.space.colors, this.space.pegs, this.history, this.recorded)
+            : this.symmetry.extendedBy(this.history, this.recorded);
+  }
+
+  // filters in the guesses of the history that have not been seen yet
+  void sync(ILoGuess past, ILoColor palette) {
+    int guessedLen = past.length();
+    for (int i = this.recorded; i < guessedLen; i++) {
+      Guess guess = past.getIndex(i);
+      this.recordCode(PackedCode.pack(guess.sequence, palette),
+              PackedCode.feedback(guess.correct, guess.outOfPlace));
+    }
+  }
+
+  // the next guess for the game's history
+  public ILoColor nextGuess(MMGame game) {
+    this.sync(game.past, game.possibleColors);
+    return PackedCode.unpack(this.space.code(this.nextGuess()), this.space.pegs, game.possibleColors);
+  }
+
+  // guesses until the game is won or out of guesses
+  MMGame play(MMGame game) {
+    return Simulation.play(game, this);
+  }
+
+  // the index of the code with the smallest worst case partition
+  int nextGuess() {
+    if (this.candidateCount == 0) {
+      throw new IllegalStateException("no code is consistent with the feedback");
+    } else if (this.candidateCount <= 2) {
+      // either candidate splits the rest into singletons
+      return this.candidates[0];
+    }
+
+    if (this.pool != null) {
+      AtomicInteger bound = new AtomicInteger(Integer.MAX_VALUE);
+      return this.pool.invoke(new MinimaxTask(this, 0, this.space.size(), bound))[0];
+    }
+
+    int best = -1;
+    int bestWorst = Integer.MAX_VALUE;
+    for (int guess = 0; guess < this.space.size(); guess++) {
+      if (!this.isWorthScoring(guess)) {
+        continue;
+      }
+      int worst = this.worstCase(guess, bestWorst, this.histogram);
+      if (best == -1 || this.isBetter(guess, worst, best, bestWorst)) {
+        best = guess;
+        bestWorst = worst;
+      }
+    }
+    return best;
+  }
+
+  // is the guess the one scored among those it is interchangeable with
+  boolean isWorthScoring(int guess) {
+    long code = this.space.code(guess);
+    if (this.recorded == 0) {
+      // with no feedback yet, codes with the same color pattern are interchangeable
+      return this.isOpeningPattern(code) && this.isFreshInOrder(code);
+    }
+    // afterwards, codes the history's symmetries map onto each other
+    return this.symmetry.isRepresentative(code);
+  }
+
+  // how many candidates each feedback to the guess would leave, indexed by feedback
+  int[] partitionSizes(int guess) {
+    if (this.pool != null) {
+      return this.pool.invoke(new PartitionTask(this.scorer, guess, this.candidates, 0, this.candidateCount));
+    } else {
+      int[] sizes = new int[PackedCode.FEEDBACK_SIZE];
+      this.scorer.partition(guess, this.candidates, 0, this.candidateCount, sizes, Integer.MAX_VALUE);
+      return sizes;
+    }
+  }
+
+  // orders guesses by worst case, then candidates first, then index
+  boolean isBetter(int guess, int worst, int best, int bestWorst) {
+    if (worst != bestWorst) {
+      return worst < bestWorst;
+    } else if (this.consistent.contains(guess) != this.consistent.contains(best)) {
+      return this.consistent.contains(guess);
+    } else {
+      return guess < best;
+    }
+  }
+
+  // the largest partition the guess leaves, or any value above the bound once it passes it
+  int worstCase(int guess, int bound, int[] histogram) {
+    Arrays.fill(histogram, 0);
+    return this.scorer.partition(guess, this.candidates, 0, this.candidateCount, histogram, bound);
+  }
+
+  // does the code bring in unused colors lowest first
+  boolean isFreshInOrder(long code) {
+    int pegs = this.space.pegs;
+    int seen = this.usedColors;
+    for (int peg = 0; peg < pegs; peg++) {
+      int color = PackedCode.colorAt(code, pegs, peg);
+      if ((seen & (1 << color)) == 0) {
+        // the lowest color not seen so far, in the history or earlier in this code
+        if (color != Integer.numberOfTrailingZeros(~seen)) {
+          return false;
+        }
+        seen |= 1 << color;
+      }
+    }
+    return true;
+  }
+
+  // is the code the canonical one of its color pattern
+  boolean isOpeningPattern(long code) {
+    return Symmetry.isOpeningPattern(code, this.space.pegs);
+  }
+}
+
+class ExamplesSolver {
+  ILoColor sixColors = new ConsLoColor(Color.BLUE,
+          new ConsLoColor(Color.GREEN,
+                  new ConsLoColor(Color.RED,
+                          new ConsLoColor(Color.YELLOW,
+                                  new ConsLoColor(Color.PINK,
+                                          new ConsLoColor(Color.BLACK, new MtLoColor()))))));
+
+  CodeSpace classic = new CodeSpace(6, 4, true);
+
+  boolean testCodeSpace(Tester tester) {
+    CodeSpace noDupes = new CodeSpace(6, 4, false);
+    return tester.checkExpect(classic.size(), 1296)
+            && tester.checkExpect(noDupes.size(), 360)
+            && tester.checkExpect(classic.indexOf(classic.code(777)), 777)
+            && tester.checkExpect(noDupes.code(0), 0x0123L)
+            && tester.checkExpect(new ScoreTable(classic).score(5, 900), classic.score(5, 900))
+            && tester.checkConstructorException(new IllegalArgumentException("configuration is too wide to pack"),
+            "CodeSpace", 17, 4, true);
+  }
+
+  boolean testOpening(Tester tester) {
+    // Knuth's opening is two pegs of one color and two of another
+    return tester.checkExpect(classic.code(new KnuthSolver(classic).nextGuess()), 0x0011L);
+  }
+
+  boolean testPlay(Tester tester) {
+    MMGame game = new MMGame(true, 4, 10, sixColors, new MtLoColor(), new MtLoGuess(), new Random(7));
+    MMGame solved = new KnuthSolver(classic).play(game);
+    return tester.checkExpect(solved.isWon(), true)
+            && tester.checkRange(solved.past.length(), 1, 6);
+  }
+
+  boolean testParallel(Tester tester) {
+    KnuthSolver sequential = new KnuthSolver(classic, classic, 1);
+    KnuthSolver parallel = new KnuthSolver(classic, classic, 4);
+    for (int secret = 0; secret < classic.size(); secret += 97) {
+      sequential = new KnuthSolver(classic, classic, 1);
+      parallel = new KnuthSolver(classic, classic, 4);
+      int guess = sequential.nextGuess();
+      while (classic.score(guess, secret) != PackedCode.feedback(4, 0)) {
+        if (!tester.checkExpect(parallel.nextGuess(), guess)) {
+          return false;
+        }
+        sequential.record(guess, classic.score(guess, secret));
+        parallel.record(guess, classic.score(guess, secret));
+        guess = sequential.nextGuess();
+      }
+    }
+    return tester.checkExpect(parallel.partitionSizes(7), sequential.partitionSizes(7))
+            && tester.checkConstructorException(new IllegalArgumentException("parallelism must be at least one"),
+            "KnuthSolver", classic, classic, 0);
+  }
+}
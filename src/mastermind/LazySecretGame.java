@@ -0,0 +1,180 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// the feedback the adversary gives the current input, and the codes it leaves alive
+class Reply {
+  int feedback;
+  CandidateSet alive;
+
+  Reply(int feedback, CandidateSet alive) {
+    this.feedback = feedback;
+    this.alive = alive;
+  }
+}
+
+// a game that never picks its secret: every guess gets the feedback shared by the most codes
+// still consistent with the history, and only those codes stay alive, so the player always
+// faces the worst secret and cannot get lucky. The live codes are a CandidateSet, so a guess
+// costs one pass over the survivors, split across a pool when there are many, and a second
+// over their scores, never a list of codes;
+// the correct code shown at the end is the lowest survivor
+class LazySecretGame extends MMGame {
+  // large live sets are scored across every core, keeping the first guesses of 8+ colors quick
+  static final ForkJoinPool POOL = Runtime.getRuntime().availableProcessors() == 1
+          ? null : SolverPools.withParallelism(Runtime.getRuntime().availableProcessors());
+
+  CandidateSet alive;
+
+  // the reply to the current input, worked out by whichever of exactMatches and scoreGuess
+  // asks first; replies only depend on the game, so two threads racing to set it agree
+  Reply reply;
+
+  // for updating the game state
+  LazySecretGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors, ILoColor correct,
+                 ILoColor current, ILoGuess past, Random rand, String pending, CandidateSet alive) {
+    super(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors, correct, current, past, rand, pending);
+    this.alive = alive;
+  }
+
+  // tester constructor
+  LazySecretGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors,
+                 ILoColor current, ILoGuess past) {
+    this(validateParams(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors),
+            sequenceLen,
+            maxGuesses,
+            possibleColors,
+            current,
+            past,
+            new CandidateSet(GuessAnalyzer.spaceFor(possibleColors.length(), sequenceLen, duplicatesAllowed)));
+  }
+
+  // a game with every code alive
+  LazySecretGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors,
+                 ILoColor current, ILoGuess past, CandidateSet alive) {
+    this(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors, lowest(alive, possibleColors),
+            current, past, new Random(), "", alive);
+  }
+
+  // real game constructor
+  LazySecretGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors) {
+    this(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors, new MtLoColor(), new MtLoGuess());
+    GameClock.start(this);
+  }
+
+  // the lowest live code as colors
+  static ILoColor lowest(CandidateSet alive, ILoColor possibleColors) {
+    return PackedCode.unpack(alive.space.code(alive.first()), alive.space.pegs, possibleColors);
+  }
+
+  // the feedback of the largest partition of the live codes under the current input; ties go to
+  // the lowest feedback, which has the fewest exact matches and is never the win
+  Reply reply() {
+    Reply known = this.reply;
+    if (known == null) {
+      long guess = PackedCode.pack(this.current, this.possibleColors);
+      byte[] scores = new byte[this.alive.size()];
+      int[] sizes = new int[PackedCode.FEEDBACK_SIZE];
+      this.alive.partition(guess, scores, sizes, POOL);
+      int best = 0;
+      for (int feedback = 1; feedback < sizes.length; feedback++) {
+        if (sizes[feedback] > sizes[best]) {
+          best = feedback;
+        }
+      }
+      known = new Reply(best, this.alive.keeping(scores, best));
+      this.reply = known;
+    }
+    return known;
+  }
+
+  // pegs the adversary says match exactly
+  public int exactMatches() {
+    return PackedCode.exact(this.reply().feedback);
+  }
+
+  // pegs the adversary says match in color, in place or not
+  public int colorMatches() {
+    int feedback = this.reply().feedback;
+    return PackedCode.exact(feedback) + PackedCode.outOfPlace(feedback);
+  }
+
+  // places the current input with the adversary's feedback and keeps only the codes that agree
+  public MMGame scoreGuess() {
+    Reply reply = this.reply();
+    ILoGuess newPast = this.past.append(new Guess(this.current, PackedCode.outOfPlace(reply.feedback),
+            PackedCode.exact(reply.feedback)));
+    return new LazySecretGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses, this.possibleColors,
+            lowest(reply.alive, this.possibleColors), new MtLoColor(), newPast, this.rand, "", reply.alive);
+  }
+
+  // the same game with the given digits typed toward a color
+  public MMGame withPending(String typed) {
+    return new LazySecretGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses, this.possibleColors,
+            this.correct, this.current, this.past, this.rand, typed, this.alive);
+  }
+
+  // changes the current guess and the past guesses, sharing the live codes since they only
+  // change when a guess is scored
+  public MMGame replaceCurrentAndPlace(ILoColor newCurrent, ILoGuess newPast) {
+    return new LazySecretGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses, this.possibleColors,
+            this.correct, newCurrent, newPast, this.rand, "", this.alive);
+  }
+}
+
+class ExamplesLazySecretGame {
+  ILoColor sixColors = MMGame.makePalette(6);
+  LazySecretGame classic = new LazySecretGame(true, 4, 10, sixColors);
+
+  // the palette colors at the given indexes
+  ILoColor code(int a, int b, int c, int d) {
+    return PackedCode.unpack(((long) a << 12) | (b << 8) | (c << 4) | d, 4, sixColors);
+  }
+
+  boolean testLargestPartition(Tester tester) {
+    // 1122 leaves 256 codes at worst, both with no matches and with one color out of place;
+    // the tie goes to no matches
+    MMGame afterOpening = classic.replaceCurrentAndPlace(code(0, 0, 1, 1), classic.past).processGuess();
+    LazySecretGame lazy = (LazySecretGame) afterOpening;
+    CodeSpace space = lazy.alive.space;
+    int opening = space.indexOf(0x0011L);
+    for (int secret : lazy.alive.toArray()) {
+      if (!tester.checkExpect(space.score(opening, secret), PackedCode.feedback(0, 0))) {
+        return false;
+      }
+    }
+    return tester.checkExpect(lazy.alive.size(), 256)
+            && tester.checkExpect(lazy.past.getIndex(0).correct, 0)
+            && tester.checkExpect(lazy.past.getIndex(0).outOfPlace, 0)
+            && tester.checkExpect(lazy.correct.findExact(code(0, 0, 1, 1)), 0)
+            && tester.checkExpect(classic.alive.size(), 1296);
+  }
+
+  boolean testOnlyForcedWins(Tester tester) {
+    // guessing the code shown as correct does not win while other codes are alive
+    MMGame typed = classic.replaceCurrentAndPlace(classic.correct, classic.past);
+    MMGame placed = typed.processGuess();
+    LazySecretGame solved = (LazySecretGame) Simulation.play(classic,
+            new KnuthSolver(GuessAnalyzer.spaceFor(6, 4, true)));
+    return tester.checkExpect(typed.exactMatches() < 4, true)
+            && tester.checkExpect(placed.isWon(), false)
+            && tester.checkExpect(typed.exactMatches(), placed.past.getIndex(0).correct)
+            && tester.checkExpect(solved.isWon(), true)
+            && tester.checkExpect(solved.alive.size(), 1)
+            && tester.checkRange(solved.past.length(), 5, 6);
+  }
+
+  boolean testTyping(Tester tester) {
+    // keys keep the live codes, and only a scored guess narrows them
+    MMGame typed = (MMGame) classic.onKeyEvent("1");
+    MMGame erased = (MMGame) typed.onKeyEvent("backspace");
+    return tester.checkExpect(((LazySecretGame) typed).alive, classic.alive)
+            && tester.checkExpect(((LazySecretGame) erased).alive, classic.alive)
+            && tester.checkExpect(typed.current.length(), 1)
+            && tester.checkConstructorException(new IllegalArgumentException("code space is too large to enumerate"),
+            "LazySecretGame", true, 12, 10, MMGame.makePalette(9));
+  }
+}
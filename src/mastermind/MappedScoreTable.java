@@ -0,0 +1,289 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+// a score table kept in a file and mapped into memory, so later runs open it
+// instantly and every process reading it shares the same pages
+//   header: magic, version, colors, pegs, duplicates, code count (padded to HEADER_SIZE)
+//   body:   one feedback byte per (guess, secret), row by row
+class MappedScoreTable implements IScorer {
+  static final int MAGIC = 0x4D4D4654; // "MMFT"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  // four gigabytes, enough for 8 colors by 5 pegs
+  static final long MAX_ENTRIES = 1L << 32;
+  // rows are written this many bytes at a time
+  static final int WRITE_BATCH = 1 << 20;
+
+  int size;
+  // each segment maps rowsPerSegment whole rows, since one mapping stops at 2GB
+  int rowsPerSegment;
+  MappedByteBuffer[] segments;
+
+  MappedScoreTable(int size, MappedByteBuffer[] segments, int rowsPerSegment) {
+    this.size = size;
+    this.segments = segments;
+    this.rowsPerSegment = rowsPerSegment;
+  }
+
+  // the file a configuration's table is cached in
+  static File fileFor(File directory, CodeSpace space) {
+    String dupes = space.duplicatesAllowed ? "" : "-nodupes";
+    return new File(directory, "feedback-" + space.colors + "x" + space.pegs + dupes + ".v" + VERSION + ".mmft");
+  }
+
+  // opens the cached table, building it first when it is missing
+  static MappedScoreTable openOrBuild(File directory, CodeSpace space) throws IOException {
+    File file = fileFor(directory, space);
+    if (!file.exists()) {
+      // builds beside the target and renames, so readers never see half a table
+      File partial = File.createTempFile(file.getName(), ".partial", directory);
+      boolean moved = false;
+      try {
+        write(space, partial);
+        moved = partial.renameTo(file);
+        if (!moved && !file.exists()) {
+          throw new IOException("could not move " + partial + " into place");
+        }
+      } finally {
+        // another process may have put its table in place first, or the write failed
+        if (!moved) {
+          partial.delete();
+        }
+      }
+    }
+    return open(file, space);
+  }
+
+  // scores every pair of the code space into the file
+  static void write(CodeSpace space, File file) throws IOException {
+    long entries = (long) space.size() * space.size();
+    if (entries > MAX_ENTRIES) {
+      throw new IllegalArgumentException("code space is too large to tabulate");
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(space.colors).putInt(space.pegs)
+              .putInt(space.duplicatesAllowed ? 1 : 0).putInt(space.size());
+      header.rewind();
+      writeFully(channel, header);
+
+      ByteBuffer batch = ByteBuffer.allocate(Math.max(WRITE_BATCH, space.size()));
+      for (int guess = 0; guess < space.size(); guess++) {
+        if (batch.remaining() < space.size()) {
+          batch.flip();
+          writeFully(channel, batch);
+          batch.clear();
+        }
+        for (int secret = 0; secret < space.size(); secret++) {
+          batch.put((byte) space.score(guess, secret));
+        }
+      }
+      batch.flip();
+      writeFully(channel, batch);
+    }
+  }
+
+  // writes the whole buffer, however many calls the channel needs
+  static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  // maps a table written for the given code space
+  static MappedScoreTable open(File file, CodeSpace space) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      int read = 0;
+      while (header.hasRemaining() && read >= 0) {
+        read = channel.read(header);
+      }
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+        throw new IOException("not a feedback table: " + file);
+      }
+      if (header.getInt() != VERSION) {
+        throw new IOException("unsupported feedback table version: " + file);
+      }
+      int colors = header.getInt();
+      int pegs = header.getInt();
+      boolean duplicatesAllowed = header.getInt() == 1;
+      int size = header.getInt();
+      if (colors != space.colors || pegs != space.pegs || duplicatesAllowed != space.duplicatesAllowed
+              || size != space.size()) {
+        throw new IllegalArgumentException("feedback table is for a different configuration");
+      }
+      if (channel.size() != HEADER_SIZE + (long) size * size) {
+        throw new IOException("truncated feedback table: " + file);
+      }
+
+      int rowsPerSegment = Integer.MAX_VALUE / size;
+      MappedByteBuffer[] segments = new MappedByteBuffer[(size + rowsPerSegment - 1) / rowsPerSegment];
+      for (int i = 0; i < segments.length; i++) {
+        int rows = Math.min(rowsPerSegment, size - i * rowsPerSegment);
+        long offset = HEADER_SIZE + (long) i * rowsPerSegment * size;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, (long) rows * size);
+      }
+      // the mappings stay valid after the channel is closed
+      return new MappedScoreTable(size, segments, rowsPerSegment);
+    }
+  }
+
+  public int score(int guess, int secret) {
+    int offset = (guess % this.rowsPerSegment) * this.size + secret;
+    return this.segments[guess / this.rowsPerSegment].get(offset) & 0xFF;
+  }
+
+  public int partition(int guess, int[] secrets, int from, int to, int[] histogram, int bound) {
+    MappedByteBuffer segment = this.segments[guess / this.rowsPerSegment];
+    int row = (guess % this.rowsPerSegment) * this.size;
+    int worst = 0;
+    for (int i = from; i < to; i++) {
+      int size = ++histogram[segment.get(row + secrets[i]) & 0xFF];
+      if (size > worst) {
+        worst = size;
+        if (worst > bound) {
+          return worst;
+        }
+      }
+    }
+    return worst;
+  }
+}
+
+// score tables that solvers of a configuration answer feedback from, by code index; kept
+// in an array replaced whole on every change, so a lookup neither locks nor allocates
+class FeedbackTables {
+  static volatile FeedbackTables[] registered = new FeedbackTables[0];
+
+  CodeSpace space;
+  IScorer scorer;
+
+  FeedbackTables(CodeSpace space, IScorer scorer) {
+    this.space = space;
+    this.scorer = scorer;
+  }
+
+  // the key of a configuration
+  static String key(int colors, int pegs, boolean duplicatesAllowed) {
+    return colors + "x" + pegs + (duplicatesAllowed ? "" : "-nodupes");
+  }
+
+  // makes solvers of the space's configuration score through the given table
+  static synchronized void register(CodeSpace space, IScorer scorer) {
+    unregister(space.colors, space.pegs, space.duplicatesAllowed);
+    FeedbackTables[] grown = Arrays.copyOf(registered, registered.length + 1);
+    grown[grown.length - 1] = new FeedbackTables(space, scorer);
+    registered = grown;
+  }
+
+  // goes back to scoring the configuration directly
+  static synchronized void unregister(int colors, int pegs, boolean duplicatesAllowed) {
+    FeedbackTables[] kept = new FeedbackTables[registered.length];
+    int count = 0;
+    for (FeedbackTables table : registered) {
+      if (!table.isFor(colors, pegs, duplicatesAllowed)) {
+        kept[count] = table;
+        count += 1;
+      }
+    }
+    registered = Arrays.copyOf(kept, count);
+  }
+
+  // the table registered for the configuration, or null
+  static FeedbackTables lookup(int colors, int pegs, boolean duplicatesAllowed) {
+    for (FeedbackTables table : registered) {
+      if (table.isFor(colors, pegs, duplicatesAllowed)) {
+        return table;
+      }
+    }
+    return null;
+  }
+
+  // is this the table of the configuration
+  boolean isFor(int colors, int pegs, boolean duplicatesAllowed) {
+    return this.space.colors == colors && this.space.pegs == pegs
+            && this.space.duplicatesAllowed == duplicatesAllowed;
+  }
+}
+
+class ExamplesMappedTable {
+  ILoColor fourColors = new ConsLoColor(Color.BLUE,
+          new ConsLoColor(Color.GREEN,
+                  new ConsLoColor(Color.RED,
+                          new ConsLoColor(Color.YELLOW, new MtLoColor()))));
+
+  CodeSpace small = new CodeSpace(4, 3, true);
+
+  boolean testRoundTrip(Tester tester) throws IOException {
+    File directory = java.nio.file.Files.createTempDirectory("mmft").toFile();
+    MappedScoreTable table = MappedScoreTable.openOrBuild(directory, small);
+    MappedScoreTable reopened = MappedScoreTable.openOrBuild(directory, small);
+    for (int guess = 0; guess < small.size(); guess++) {
+      for (int secret = 0; secret < small.size(); secret++) {
+        if (!(tester.checkExpect(table.score(guess, secret), small.score(guess, secret))
+                && tester.checkExpect(reopened.score(guess, secret), small.score(guess, secret)))) {
+          return false;
+        }
+      }
+    }
+    return tester.checkExpect(MappedScoreTable.fileFor(directory, small).length(),
+            (long) MappedScoreTable.HEADER_SIZE + 64 * 64)
+            && tester.checkExpect(MappedScoreTable.fileFor(directory, new CodeSpace(4, 3, false)).getName(),
+            "feedback-4x3-nodupes.v1.mmft");
+  }
+
+  boolean testNoPartialLeft(Tester tester) throws IOException {
+    // a build that does not end in place leaves nothing behind
+    File directory = java.nio.file.Files.createTempDirectory("mmft").toFile();
+    String failure = "none";
+    try {
+      MappedScoreTable.openOrBuild(directory, new CodeSpace(8, 6, true));
+    } catch (IllegalArgumentException e) {
+      failure = e.getMessage();
+    }
+    return tester.checkExpect(failure, "code space is too large to tabulate")
+            && tester.checkExpect(directory.list().length, 0);
+  }
+
+  boolean testSolverScoresThroughTable(Tester tester) {
+    // solvers know their codes' indexes, so they take the registered table
+    IScorer table = new ScoreTable(small);
+    FeedbackTables.register(small, table);
+    IScorer chosen = ScoreTable.bestFor(new CodeSpace(4, 3, true));
+    IScorer other = ScoreTable.bestFor(new CodeSpace(4, 3, false));
+    FeedbackTables.unregister(4, 3, true);
+    return tester.checkExpect(chosen == table, true)
+            && tester.checkExpect(other == table, false)
+            && tester.checkExpect(FeedbackTables.lookup(4, 3, true), null);
+  }
+
+  boolean testGuessOutsideTable(Tester tester) {
+    // games score packed codes directly, so a guess that repeats a color in a game without
+    // repeats is scored whether or not a table is registered
+    CodeSpace noRepeats = new CodeSpace(4, 3, false);
+    ILoColor BBB = new ConsLoColor(Color.BLUE, new ConsLoColor(Color.BLUE, new ConsLoColor(Color.BLUE,
+            new MtLoColor())));
+    ILoColor GBR = new ConsLoColor(Color.GREEN, new ConsLoColor(Color.BLUE, new ConsLoColor(Color.RED,
+            new MtLoColor())));
+    MMGame game = new MMGame(false, 3, 10, fourColors, GBR, BBB, new MtLoGuess(), new Random(3));
+    FeedbackTables.register(noRepeats, new ScoreTable(noRepeats));
+    MMGame fromTable = game.processGuess();
+    FeedbackTables.unregister(4, 3, false);
+    return tester.checkExpect(fromTable.past.getIndex(0).correct, 1)
+            && tester.checkExpect(fromTable.past.getIndex(0).outOfPlace, 0)
+            && tester.checkExpect(fromTable, game.processGuess());
+  }
+}
@@ -1,3 +1,5 @@
+package mastermind;
+
 import tester.*;                // The tester library
 import javalib.worldimages.*;   // images, like RectangleImage or OverlayImages
 import javalib.funworld.*;      // the abstract World class and the big-bang library
@@ -12,6 +14,10 @@ class MMGame extends World {
   // drawing variables
   static int CIRC_SIZE = 20;
   static int CIRC_SPACING = 50;
+  // the palette wraps onto rows this wide
+  static int PALETTE_COLUMNS = 16;
+  // ticks refine a hint on the board this often
+  static double TICK_SECONDS = 0.1;
 
   // configurations
   boolean duplicatesAllowed;
@@ -25,8 +31,11 @@ class MMGame extends World {
 
   Random rand;
 
-  // for updating the game state
-  MMGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors, ILoColor correct, ILoColor current, ILoGuess past, Random rand) {
+  // digits typed toward a color number that could still grow, for palettes past nine colors
+  String pending;
+
+  // for updating the game state, with a color number part way typed
+  MMGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors, ILoColor correct, ILoColor current, ILoGuess past, Random rand, String pending) {
     this.duplicatesAllowed = duplicatesAllowed;
     this.sequenceLen = sequenceLen;
     this.maxGuesses = maxGuesses;
@@ -38,6 +47,12 @@ class MMGame extends World {
     this.past = past;
 
     this.rand = rand;
+    this.pending = pending;
+  }
+
+  // for updating the game state
+  MMGame(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors, ILoColor correct, ILoColor current, ILoGuess past, Random rand) {
+    this(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors, correct, current, past, rand, "");
   }
 
   // tester constructor
@@ -61,12 +76,27 @@ class MMGame extends World {
             new MtLoColor(),
             new MtLoGuess(),
             new Random());
+    GameClock.start(this);
   }
 
-  // starts the accumulator to make a random sequence
+  // makes a random sequence of the given length from the possible colors
   static ILoColor makeSequence(boolean duplicatesAllowed, int len, ILoColor possibleColors, Random gen) {
-    // starts accumulator
-    return new MtLoColor().makeSequence(duplicatesAllowed, len, possibleColors, gen);
+    return new SequenceGenerator(possibleColors.length(), len, duplicatesAllowed).next(gen, possibleColors);
+  }
+
+  // the first count colors of the standard palette, then evenly spread hues
+  static ILoColor makePalette(int count) {
+    Color[] named = {Color.BLUE, Color.GREEN, Color.RED, Color.YELLOW, Color.PINK, Color.BLACK,
+        Color.ORANGE, Color.CYAN, Color.MAGENTA};
+    ILoColor palette = new MtLoColor();
+    // builds from the last color so each step is a prepend
+    for (int i = count - 1; i >= 0; i--) {
+      Color next = i < named.length
+              ? named[i]
+              : Color.getHSBColor((i - named.length) * 0.618034f % 1, 0.55f + 0.15f * (i % 3), 0.95f - 0.2f * (i % 2));
+      palette = new ConsLoColor(next, palette);
+    }
+    return palette;
   }
 
   // checks if the configs are compatible
@@ -91,22 +121,40 @@ class MMGame extends World {
     return tester;
   }
 
-  // to-draw
+  // to-draw, timed along with its allocation when metrics are on
   public WorldScene makeScene() {
+    if (!EngineMetrics.ENABLED) {
+      return this.drawScene();
+    }
+    long allocated = EngineMetrics.allocatedBytes();
+    long start = System.nanoTime();
+    WorldScene scene = this.drawScene();
+    EngineMetrics.MAKE_SCENE.record(System.nanoTime() - start);
+    EngineMetrics.FRAME_ALLOCATION.record(EngineMetrics.allocatedBytes() - allocated);
+    return scene;
+  }
+
+  // the board with the correct code hidden
+  public WorldScene drawScene() {
     return this.drawBoard()
             // places the hidden black rectangle
-            .placeImageXY(new RectangleImage(
-                    scale(this.sequenceLen),
-                    scale(1),
-                    OutlineMode.SOLID,
-                    // cannot scale the x value using scale, because of number typing
-                    Color.BLACK), ((1 + this.sequenceLen) * CIRC_SPACING / 2), scale(1));
+            // cannot scale the x value using scale, because of number typing
+            .placeImageXY(RenderCache.cover(this.sequenceLen), ((1 + this.sequenceLen) * CIRC_SPACING / 2), scale(1));
   }
 
   // draws everything without the correct code
   public WorldScene drawBoard() {
-    WorldScene bg = this.getEmptyScene();
+    if (!EngineMetrics.ENABLED) {
+      return this.drawBoardOn(this.getEmptyScene());
+    }
+    long start = System.nanoTime();
+    WorldScene board = this.drawBoardOn(this.getEmptyScene());
+    EngineMetrics.DRAW_BOARD.record(System.nanoTime() - start);
+    return board;
+  }
 
+  // draws everything without the correct code onto the given background
+  public WorldScene drawBoardOn(WorldScene bg) {
     // starting y coord
     int bottomY = this.maxGuesses + 2;
 
@@ -119,8 +167,8 @@ class MMGame extends World {
     // y of blank rows
     int unguessedY = scale(this.maxGuesses - guessedLen);
 
-    // drawing individual components
-    WorldScene bgWithOptions = this.possibleColors.draw(bg, scale(1), scale(bottomY));
+    // drawing individual components, the palette and finished rows as cached row images
+    WorldScene bgWithOptions = this.drawPalette(bg, scale(bottomY));
     WorldScene withGuesses = this.past.drawGuesses(bgWithOptions, scale(1), scale(this.sequenceLen + 1), scale(bottomY - 1));
 
     // don't have to draw the current input, in case of loss
@@ -132,6 +180,23 @@ class MMGame extends World {
     }
   }
 
+  // draws the palette with its first row at y, numbered once colors need more than one key
+  public WorldScene drawPalette(WorldScene bg, int y) {
+    int colorCount = this.possibleColors.length();
+    if (colorCount <= 9) {
+      return RenderCache.placeRow(bg, RenderCache.row(this.possibleColors), colorCount, scale(1), y);
+    }
+    int columns = Math.min(colorCount, PALETTE_COLUMNS);
+    return bg.placeImageXY(RenderCache.palette(this.possibleColors, columns),
+            scale(1) + (columns - 1) * CIRC_SPACING / 2,
+            y + (this.paletteRows() - 1) * CIRC_SPACING / 2);
+  }
+
+  // how many rows the palette takes
+  public int paletteRows() {
+    return (this.possibleColors.length() + PALETTE_COLUMNS - 1) / PALETTE_COLUMNS;
+  }
+
   // scales the value to the canvas size
   static int scale(int n) {
     return n * CIRC_SPACING;
@@ -144,7 +209,11 @@ class MMGame extends World {
 
     // recurs the blank circles from the right
     int blanks = this.sequenceLen - this.current.length();
-    return this.current.draw(this.drawBlanks(bg, blanks, rightX, rowY), leftX, rowY);
+    WorldScene row = this.current.draw(this.drawBlanks(bg, blanks, rightX, rowY), leftX, rowY);
+    // the color number being typed goes in the next spot
+    return this.pending.isEmpty()
+            ? row
+            : row.placeImageXY(RenderCache.text(this.pending, Color.GRAY), leftX + scale(this.current.length()), rowY);
   }
 
 
@@ -153,7 +222,8 @@ class MMGame extends World {
     if (blankCount <= 0) {
       return bg;
     } else {
-      WorldScene updatedBg = this.drawBlanks(bg, this.sequenceLen, rightX, y);
+      WorldScene updatedBg = RenderCache.placeRow(bg, RenderCache.blankRow(this.sequenceLen),
+              this.sequenceLen, rightX - scale(this.sequenceLen - 1), y);
       // moves up the y val
       return this.drawUnguessed(updatedBg, blankCount - 1, rightX, y - scale(1));
     }
@@ -164,7 +234,7 @@ class MMGame extends World {
     if (blanks <= 0) {
       return bg;
     } else {
-      WorldScene updatedBg = bg.placeImageXY(new CircleImage(CIRC_SIZE, OutlineMode.OUTLINE, Color.BLACK), x, y);
+      WorldScene updatedBg = bg.placeImageXY(RenderCache.outlineCircle(Color.BLACK), x, y);
       // moves across
       return this.drawBlanks(updatedBg, blanks - 1, x - CIRC_SPACING, y);
     }
@@ -174,24 +244,45 @@ class MMGame extends World {
   public World onKeyEvent(String key) {
     boolean isFull = this.current.length() == sequenceLen;
 
-    if ("123456789".contains(key) && Integer.parseInt(key) <= this.possibleColors.length() && !isFull) {
-      return this.appendToCurrent(this.possibleColors.getIndex(Integer.parseInt(key) - 1));
+    if (key.length() == 1 && "0123456789".contains(key) && !isFull) {
+      return this.typeDigit(key);
+    } else if (key.equals("backspace") && !this.pending.isEmpty()) {
+      // drops the color number being typed
+      return this.withPending("");
     } else if (key.equals("backspace")) {
+      // the row is the player's to edit again, so the hint search is stale
+      HintService.cancel();
       return this.removeLastGuess();
+    } else if (key.equals("h") && !this.isOver() && GuessAnalyzer.supports(this)) {
+      // fills the current row with the best guess found so far for the feedback
+      ILoColor hint = HintService.hint(this);
+      return hint == null ? this : this.replaceCurrentAndPlace(hint, this.past);
     } else if (key.equals("enter") && isFull) {
+      GameClock.guessed(this);
       // checks if the game is over
-      if (this.current.findExact(correct) == this.sequenceLen) {
+      if (this.exactMatches() == this.sequenceLen) {
+        GameLog.finished(this.processGuess());
         return this.endOfWorld("Victory!");
       } else if (this.past.length() + 1 == this.maxGuesses) {
+        GameLog.finished(this.processGuess());
         return this.endOfWorld("Lose!");
       } else {
-        return this.processGuess();
+        // the next hint is searched for while the player thinks
+        MMGame processed = this.processGuess();
+        HintService.start(processed);
+        return processed;
       }
     } else {
       return this;
     }
   }
 
+  // swaps a hint still on the board for a better one the background search has found
+  public World onTick() {
+    ILoColor better = HintService.refine(this);
+    return better == null ? this : this.replaceCurrentAndPlace(better, this.past);
+  }
+
   // draws the final scene of the game based on win or loss
   public WorldScene lastScene(String msg) {
     Color txtColor = msg.equals("Lose!") ? Color.RED : Color.GREEN;
@@ -202,10 +293,48 @@ class MMGame extends World {
     int offset = 3 * CIRC_SPACING / 2;
     int textX = scale(updatedGame.sequenceLen) + offset;
 
-    return updatedGame.correct.draw(updatedGame.drawBoard(), scale(1), scale(1))
+    return updatedGame.drawRevealed()
             .placeImageXY(new TextImage(msg, CIRC_SIZE, txtColor), textX, scale(1));
   }
 
+  // draws everything with the correct code shown
+  public WorldScene drawRevealed() {
+    return this.correct.draw(this.drawBoard(), scale(1), scale(1));
+  }
+
+  // adds a digit to the color number being typed, placing the color once the number has as
+  // many digits as the largest one or no more digits could name a color
+  public MMGame typeDigit(String digit) {
+    String typed = this.pending + digit;
+    int colorCount = this.possibleColors.length();
+    int number = Integer.parseInt(typed);
+    if (number > colorCount) {
+      return this;
+    } else if (typed.length() == Integer.toString(colorCount).length() || number * 10 > colorCount) {
+      return number == 0 ? this.withPending("") : this.appendToCurrent(this.possibleColors.getIndex(number - 1));
+    } else {
+      return this.withPending(typed);
+    }
+  }
+
+  // the same game with the given digits typed toward a color
+  public MMGame withPending(String typed) {
+    return new MMGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses, this.possibleColors, this.correct, this.current, this.past, this.rand, typed);
+  }
+
+  // adds the palette color clicked on to the current guess
+  public World onMouseClicked(Posn pos) {
+    int column = Math.floorDiv(pos.x - scale(1) + CIRC_SPACING / 2, CIRC_SPACING);
+    int row = Math.floorDiv(pos.y - scale(this.maxGuesses + 2) + CIRC_SPACING / 2, CIRC_SPACING);
+    int index = row * PALETTE_COLUMNS + column;
+    boolean onPalette = column >= 0 && column < PALETTE_COLUMNS && row >= 0 && index < this.possibleColors.length();
+    if (onPalette && this.current.length() < this.sequenceLen && !this.isOver()) {
+      return this.appendToCurrent(this.possibleColors.getIndex(index));
+    } else {
+      return this;
+    }
+  }
+
   // adds the given color to the current guess
   public MMGame appendToCurrent(Color c) {
     return this.replaceCurrentAndPlace(this.current.append(c), this.past);
@@ -224,21 +353,84 @@ class MMGame extends World {
 
   // turns the current input into a past guess with feedback
   public MMGame processGuess() {
-    int exactMatches = this.current.findExact(correct);
+    if (!EngineMetrics.ENABLED) {
+      return this.scoreGuess();
+    }
+    long start = System.nanoTime();
+    MMGame scored = this.scoreGuess();
+    EngineMetrics.PROCESS_GUESS.record(System.nanoTime() - start);
+    return scored;
+  }
 
+  // pegs of the current input matching the correct code exactly
+  public int exactMatches() {
+    if (!EngineMetrics.ENABLED) {
+      return this.current.findExact(this.correct);
+    }
+    long start = System.nanoTime();
+    int exact = this.current.findExact(this.correct);
+    EngineMetrics.FIND_EXACT.record(System.nanoTime() - start);
+    return exact;
+  }
+
+  // pegs of the current input matching a color of the correct code, in place or not
+  public int colorMatches() {
+    if (!EngineMetrics.ENABLED) {
+      return this.current.findInexact(this.correct);
+    }
+    long start = System.nanoTime();
+    int matches = this.current.findInexact(this.correct);
+    EngineMetrics.FIND_INEXACT.record(System.nanoTime() - start);
+    return matches;
+  }
+
+  // scores the current input against the correct code
+  public MMGame scoreGuess() {
+    int colorCount = this.possibleColors.length();
+    if (PackedCode.fits(colorCount, this.sequenceLen)) {
+      // scores on the packed codes, so nothing is allocated for the feedback
+      long guess = PackedCode.pack(this.current, this.possibleColors);
+      long secret = PackedCode.pack(this.correct, this.possibleColors);
+      // a table only helps callers that already know the codes' indexes, so this scores directly
+      int feedback = PackedCode.score(guess, secret, this.sequenceLen);
+      return this.placeGuess(PackedCode.outOfPlace(feedback), PackedCode.exact(feedback));
+    } else if (WideCode.fits(colorCount, this.sequenceLen)) {
+      // palette indexes a byte each, for palettes too large to pack
+      int feedback = WideCode.score(WideCode.of(this.current, this.possibleColors),
+              WideCode.of(this.correct, this.possibleColors));
+      return this.placeGuess(PackedCode.outOfPlace(feedback), PackedCode.exact(feedback));
+    } else {
+      int exactMatches = this.exactMatches();
+      return this.placeGuess(this.colorMatches() - exactMatches, exactMatches);
+    }
+  }
+
+  // moves the current input into the past guesses with the given feedback
+  public MMGame placeGuess(int outOfPlace, int exactMatches) {
     return this.replaceCurrentAndPlace(new MtLoColor(), this.past.append(new Guess(this.current,
-            this.current.findInexact(correct) - exactMatches,
+            outOfPlace,
             exactMatches)));
   }
 
+  // did the last guess match the correct sequence
+  public boolean isWon() {
+    int guessedLen = this.past.length();
+    return guessedLen > 0 && this.past.getIndex(guessedLen - 1).correct == this.sequenceLen;
+  }
+
+  // is the game won or out of guesses
+  public boolean isOver() {
+    return this.isWon() || this.past.length() == this.maxGuesses;
+  }
+
   // computes the width of the window
   public int width() {
-    return scale(Math.max(this.possibleColors.length() + 1, this.sequenceLen + 3));
+    return scale(Math.max(Math.min(this.possibleColors.length(), PALETTE_COLUMNS) + 1, this.sequenceLen + 3));
   }
 
   // computes the height of the window
   public int height() {
-    return scale(3 + this.maxGuesses);
+    return scale(2 + this.maxGuesses + this.paletteRows());
   }
 }
 
@@ -255,10 +447,10 @@ class Guess {
 
   // draws the colors and feedback
   public WorldScene drawGuess(WorldScene bg, int leftX, int rightX, int y) {
-    WorldImage outOfPlaceText = new TextImage(Integer.toString(this.outOfPlace), MMGame.CIRC_SIZE, Color.ORANGE);
-    WorldImage correctText = new TextImage(Integer.toString(this.correct), MMGame.CIRC_SIZE, Color.GREEN);
+    WorldImage outOfPlaceText = RenderCache.number(this.outOfPlace, Color.ORANGE);
+    WorldImage correctText = RenderCache.number(this.correct, Color.GREEN);
 
-    return this.sequence.draw(bg, leftX, y)
+    return RenderCache.placeRow(bg, RenderCache.row(this.sequence), this.sequence.length(), leftX, y)
             .placeImageXY(outOfPlaceText, rightX, y)
             .placeImageXY(correctText, rightX + MMGame.CIRC_SPACING, y);
   }
@@ -273,6 +465,9 @@ interface ILoGuess {
 
   // adds the list of colors to the list with the feedback numbers
   ILoGuess append(Guess g);
+
+  // finds the guess at a given index
+  Guess getIndex(int index);
 }
 
 class MtLoGuess implements ILoGuess {
@@ -285,17 +480,24 @@ class MtLoGuess implements ILoGuess {
   }
 
   public ILoGuess append(Guess guess) {
-    return new ConsLoGuess(guess, new MtLoGuess());
+    return new SnocLoGuess(this, guess);
+  }
+
+  public Guess getIndex(int index) {
+    throw new IllegalArgumentException("given index is not in the list");
   }
 }
 
 class ConsLoGuess implements ILoGuess {
   Guess first;
   ILoGuess rest;
+  // cached so length is constant time
+  int size;
 
   ConsLoGuess(Guess first, ILoGuess rest) {
     this.first = first;
     this.rest = rest;
+    this.size = 1 + rest.length();
   }
 
   public WorldScene drawGuesses(WorldScene bg, int leftX, int rightX, int y) {
@@ -303,14 +505,54 @@ class ConsLoGuess implements ILoGuess {
   }
 
   public int length() {
-    return 1 + this.rest.length();
+    return this.size;
+  }
+
+  public ILoGuess append(Guess guess) {
+    return new SnocLoGuess(this, guess);
+  }
+
+  public Guess getIndex(int index) {
+    if (index == 0) {
+      return this.first;
+    } else {
+      return this.rest.getIndex(index - 1);
+    }
+  }
+}
+
+// a list of guesses built from the end, so appending never copies the earlier guesses
+class SnocLoGuess implements ILoGuess {
+  ILoGuess init;
+  Guess last;
+  // cached so length is constant time
+  int size;
+
+  SnocLoGuess(ILoGuess init, Guess last) {
+    this.init = init;
+    this.last = last;
+    this.size = init.length() + 1;
+  }
+
+  public WorldScene drawGuesses(WorldScene bg, int leftX, int rightX, int y) {
+    // the earlier guesses start at the bottom, so the last one sits above them
+    WorldScene withInit = this.init.drawGuesses(bg, leftX, rightX, y);
+    return this.last.drawGuess(withInit, leftX, rightX, y - MMGame.scale(this.size - 1));
+  }
+
+  public int length() {
+    return this.size;
   }
 
   public ILoGuess append(Guess guess) {
-    if (this.rest.length() == 0) {
-      return new ConsLoGuess(this.first, new ConsLoGuess(guess, new MtLoGuess()));
+    return new SnocLoGuess(this, guess);
+  }
+
+  public Guess getIndex(int index) {
+    if (index == this.size - 1) {
+      return this.last;
     } else {
-      return new ConsLoGuess(this.first, this.rest.append(guess));
+      return this.init.getIndex(index);
     }
   }
 }
@@ -319,8 +561,6 @@ interface ILoColor {
   // gets the length of a list
   int length();
 
-  // makes a list with a given length and random colors given a list of possible
-  ILoColor makeSequence(boolean duplicatesAllowed, int left, ILoColor possibleColors, Random gen);
 
   // finds the color at a given index
   Color getIndex(int index);
@@ -348,6 +588,15 @@ interface ILoColor {
 
   // is the given color inside this
   boolean isMember(Color c);
+
+  // finds the index of the given color
+  int indexOf(Color c);
+
+  // packs the palette indices of this after the given code
+  long packOnto(long code, ILoColor palette);
+
+  // writes the colors into the array from the given index on
+  void copyInto(Color[] colors, int index);
 }
 
 class MtLoColor implements ILoColor {
@@ -355,19 +604,6 @@ class MtLoColor implements ILoColor {
     return 0;
   }
 
-  public ILoColor makeSequence(boolean duplicatesAllowed, int left, ILoColor possibleColors, Random gen) {
-    // uses natural number recursion
-    if (left == 0) {
-      return this;
-    } else {
-      // gets the new color's index from possible and new possible
-      Color newColor = possibleColors.getIndex(gen.nextInt(possibleColors.length()));
-      ILoColor newPosColors = duplicatesAllowed ? possibleColors : possibleColors.remove(newColor);
-
-      return new ConsLoColor(newColor, new MtLoColor()).makeSequence(duplicatesAllowed, left - 1, newPosColors, gen);
-    }
-  }
-
   public Color getIndex(int index) {
     throw new IllegalArgumentException("given index is not in the list");
   }
@@ -403,32 +639,34 @@ class MtLoColor implements ILoColor {
   public boolean isMember(Color c) {
     return false;
   }
+
+  public int indexOf(Color c) {
+    throw new IllegalArgumentException("given color is not in the list");
+  }
+
+  public long packOnto(long code, ILoColor palette) {
+    return code;
+  }
+
+  public void copyInto(Color[] colors, int index) {
+    // nothing left to write
+  }
 }
 
 class ConsLoColor implements ILoColor {
   Color first;
   ILoColor rest;
+  // cached so length is constant time
+  int size;
 
   ConsLoColor(Color first, ILoColor rest) {
     this.first = first;
     this.rest = rest;
+    this.size = 1 + rest.length();
   }
 
   public int length() {
-    // simple recursion
-    return 1 + this.rest.length();
-  }
-
-  public ILoColor makeSequence(boolean duplicatesAllowed, int left, ILoColor possibleColors, Random gen) {
-    if (left == 0) {
-      return this;
-    } else {
-      // gets the new color's index from possible and new possible
-      Color newColor = possibleColors.getIndex(gen.nextInt(possibleColors.length()));
-      ILoColor newPosColors = duplicatesAllowed ? possibleColors : possibleColors.remove(newColor);
-
-      return new ConsLoColor(newColor, this).makeSequence(duplicatesAllowed, left - 1, newPosColors, gen);
-    }
+    return this.size;
   }
 
   public Color getIndex(int index) {
@@ -449,7 +687,7 @@ class ConsLoColor implements ILoColor {
 
   public WorldScene draw(WorldScene bg, int x, int y) {
     return this.rest
-            .draw(bg.placeImageXY(new CircleImage(MMGame.CIRC_SIZE, OutlineMode.SOLID, this.first), x, y),
+            .draw(bg.placeImageXY(RenderCache.solidCircle(this.first), x, y),
                     x + MMGame.CIRC_SPACING, y);
   }
 
@@ -458,7 +696,7 @@ class ConsLoColor implements ILoColor {
   }
 
   public ILoColor chop() {
-    if (this.length() > 1) {
+    if (this.size > 1) {
       return new ConsLoColor(this.first, this.rest.chop());
     } else {
       return this.rest;
@@ -497,6 +735,23 @@ class ConsLoColor implements ILoColor {
       return this.rest.isMember(c);
     }
   }
+
+  public int indexOf(Color c) {
+    if (c.equals(this.first)) {
+      return 0;
+    } else {
+      return 1 + this.rest.indexOf(c);
+    }
+  }
+
+  public long packOnto(long code, ILoColor palette) {
+    return this.rest.packOnto(PackedCode.push(code, palette.indexOf(this.first)), palette);
+  }
+
+  public void copyInto(Color[] colors, int index) {
+    colors[index] = this.first;
+    this.rest.copyInto(colors, index + 1);
+  }
 }
 
 class Examples {
@@ -586,6 +841,48 @@ class Examples {
 
   }
 
+  boolean testPacked(Tester tester) {
+    long packedGBPR = PackedCode.pack(GBPR, sixColors);
+    return tester.checkExpect(sixColors.indexOf(Color.PINK), 4)
+            && tester.checkException(new IllegalArgumentException("given color is not in the list"), justRed, "indexOf", Color.BLUE)
+            && tester.checkExpect(PackedCode.colorAt(packedGBPR, 4, 1), 5)
+            && tester.checkExpect(PackedCode.unpack(packedGBPR, 4, sixColors), GBPR)
+            && tester.checkExpect(PackedCode.score(packedGBPR, PackedCode.pack(BGRY, sixColors), 4),
+            PackedCode.feedback(0, 2))
+            && tester.checkExpect(PackedCode.score(packedGBPR, packedGBPR, 4), PackedCode.feedback(4, 0));
+  }
+
+  boolean testLargePalette(Tester tester) {
+    ILoColor fortyColors = MMGame.makePalette(40);
+    MMGame wide = new MMGame(true, 12, 20, fortyColors, new MtLoColor(), new MtLoGuess(), new Random(9));
+    // numbers that could still grow wait for another digit, the rest are placed at once
+    MMGame typedOne = (MMGame) wide.onKeyEvent("1");
+    MMGame typed17 = (MMGame) typedOne.onKeyEvent("7");
+    MMGame typed5 = (MMGame) typed17.onKeyEvent("5");
+    MMGame typed03 = (MMGame) ((MMGame) typed5.onKeyEvent("0")).onKeyEvent("3");
+    MMGame tooLarge = (MMGame) ((MMGame) typed03.onKeyEvent("4")).onKeyEvent("1");
+    MMGame clicked = (MMGame) wide.onMouseClicked(new Posn(MMGame.scale(2), MMGame.scale(23)));
+
+    // a full wide guess is scored on palette indexes, the same as the list matchers
+    MMGame guessed = wide.replaceCurrentAndPlace(MMGame.makeSequence(true, 12, fortyColors, new Random(4)), wide.past);
+    int exact = guessed.current.findExact(guessed.correct);
+    Guess scored = guessed.processGuess().past.getIndex(0);
+    return tester.checkExpect(typedOne.current, new MtLoColor())
+            && tester.checkExpect(typedOne.pending, "1")
+            && tester.checkExpect(typed17.current.getIndex(0), fortyColors.getIndex(16))
+            && tester.checkExpect(typed5.current.getIndex(1), fortyColors.getIndex(4))
+            && tester.checkExpect(typed03.current.getIndex(2), fortyColors.getIndex(2))
+            && tester.checkExpect(tooLarge.pending, "4")
+            && tester.checkExpect(((MMGame) tooLarge.onKeyEvent("backspace")).pending, "")
+            && tester.checkExpect(((MMGame) tooLarge.onKeyEvent("backspace")).current, typed03.current)
+            // the second palette row starts with the seventeenth color
+            && tester.checkExpect(clicked.current.getIndex(0), fortyColors.getIndex(17))
+            && tester.checkExpect(wide.paletteRows(), 3)
+            && tester.checkExpect(wide.height(), MMGame.scale(25))
+            && tester.checkExpect(scored.correct, exact)
+            && tester.checkExpect(scored.outOfPlace, guessed.current.findInexact(guessed.correct) - exact);
+  }
+
   boolean testRemove(Tester tester) {
     return tester.checkExpect(GBPR.remove(Color.GREEN), new ConsLoColor(Color.BLACK,
             new ConsLoColor(Color.PINK,
@@ -596,16 +893,28 @@ class Examples {
   boolean testEndGame(Tester tester) {
     return tester.checkExpect(testerGame2.processGuess(),
             new MMGame(true, 4, 4, sixColors, randomSeq, new MtLoColor(),
-                    new ConsLoGuess(guessOfGBPR,
+                    new SnocLoGuess(new ConsLoGuess(guessOfGBPR,
                             new ConsLoGuess(guessOfGBPR,
-                                    new ConsLoGuess(guessOfGBPR,
-                                            new ConsLoGuess(new Guess(BGRY, 0, 2), new MtLoGuess())))), new Random(1)).endOfWorld("Lose!"));
+                                    new ConsLoGuess(guessOfGBPR, new MtLoGuess()))),
+                            new Guess(BGRY, 0, 2)), new Random(1)).endOfWorld("Lose!"));
+  }
+
+  boolean testHistory(Tester tester) {
+    ILoGuess history = new MtLoGuess().append(guessOfGBPR).append(guessOfBRGY);
+    ILoGuess longer = testerGame1.past.append(guessOfGBPR);
+    return tester.checkExpect(history, new SnocLoGuess(new SnocLoGuess(new MtLoGuess(), guessOfGBPR), guessOfBRGY))
+            && tester.checkExpect(history.length(), 2)
+            && tester.checkExpect(history.getIndex(0), guessOfGBPR)
+            && tester.checkExpect(longer.length(), 3)
+            && tester.checkExpect(longer.getIndex(1), guessOfGBPR)
+            && tester.checkExpect(longer.getIndex(2), guessOfGBPR)
+            && tester.checkException(new IllegalArgumentException("given index is not in the list"), history, "getIndex", 2);
   }
 
   boolean testRun(Tester tester) {
     MMGame game = new MMGame(true, 3, 10, sixColors);
     int w = game.width();
     int h = game.height();
-    return game.bigBang(w, h);
+    return game.bigBang(w, h, MMGame.TICK_SECONDS);
   }
 }
\ No newline at end of file
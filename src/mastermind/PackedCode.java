@@ -0,0 +1,129 @@
+package mastermind;
+
+// a code packed into a long as palette indices, four bits per peg with the first peg
+// in the highest used nibble, so feedback never has to walk or rebuild a list of colors
+class PackedCode {
+  static final int BITS_PER_PEG = 4;
+  static final int MAX_COLORS = 1 << BITS_PER_PEG;
+  // keeps the exact count inside one nibble of the feedback
+  static final int MAX_PEGS = 15;
+
+  // feedback is exact << 4 | outOfPlace, so every feedback fits in a byte
+  static final int FEEDBACK_SIZE = 256;
+
+  static final long NIBBLE_ONES = 0x1111111111111111L;
+  static final long BYTE_ONES = 0x0101010101010101L;
+  static final long BYTE_HIGHS = 0x8080808080808080L;
+
+  // can the configuration be packed and scored
+  static boolean fits(int colors, int pegs) {
+    return colors <= MAX_COLORS && pegs <= MAX_PEGS;
+  }
+
+  // packs the sequence using the palette's indices
+  static long pack(ILoColor sequence, ILoColor palette) {
+    return sequence.packOnto(0L, palette);
+  }
+
+  // adds one more peg after the ones already packed
+  static long push(long code, int colorIndex) {
+    return (code << BITS_PER_PEG) | colorIndex;
+  }
+
+  // the palette index at the given peg, counting from the first
+  static int colorAt(long code, int pegs, int peg) {
+    return (int) (code >>> ((pegs - 1 - peg) * BITS_PER_PEG)) & (MAX_COLORS - 1);
+  }
+
+  // turns a packed code back into a list of colors
+  static ILoColor unpack(long code, int pegs, ILoColor palette) {
+    ILoColor result = new MtLoColor();
+    // builds from the last peg so each step is a prepend
+    for (int peg = pegs - 1; peg >= 0; peg--) {
+      result = new ConsLoColor(palette.getIndex(colorAt(code, pegs, peg)), result);
+    }
+    return result;
+  }
+
+  // the feedback for a guess against a secret, in one pass and without allocating
+  static int score(long guess, long secret, int pegs) {
+    int exact = exactMatches(guess, secret, pegs);
+
+    // per-color histograms, one byte per color, colors 0-7 low and 8-15 high
+    long guessLow = 0;
+    long guessHigh = 0;
+    long secretLow = 0;
+    long secretHigh = 0;
+    for (int peg = 0; peg < pegs; peg++) {
+      int shift = peg * BITS_PER_PEG;
+      int guessColor = (int) (guess >>> shift) & (MAX_COLORS - 1);
+      int secretColor = (int) (secret >>> shift) & (MAX_COLORS - 1);
+      if (guessColor < 8) {
+        guessLow += 1L << (guessColor << 3);
+      } else {
+        guessHigh += 1L << ((guessColor - 8) << 3);
+      }
+      if (secretColor < 8) {
+        secretLow += 1L << (secretColor << 3);
+      } else {
+        secretHigh += 1L << ((secretColor - 8) << 3);
+      }
+    }
+
+    int matches = sumOfMins(guessLow, secretLow) + sumOfMins(guessHigh, secretHigh);
+    return feedback(exact, matches - exact);
+  }
+
+  // the feedback when both histograms are already known
+  static int score(long guess, long guessLow, long guessHigh,
+                   long secret, long secretLow, long secretHigh, int pegs) {
+    int exact = exactMatches(guess, secret, pegs);
+    int matches = sumOfMins(guessLow, secretLow) + sumOfMins(guessHigh, secretHigh);
+    return feedback(exact, matches - exact);
+  }
+
+  // counts the pegs that agree in color and place
+  static int exactMatches(long guess, long secret, int pegs) {
+    // a nibble of the xor is zero exactly where the pegs agree
+    long diff = guess ^ secret;
+    long differing = (diff | (diff >>> 1) | (diff >>> 2) | (diff >>> 3)) & NIBBLE_ONES;
+    long used = (1L << (pegs * BITS_PER_PEG)) - 1;
+    return pegs - Long.bitCount(differing & used);
+  }
+
+  // the byte-per-color histogram of colors 0-7, or of colors 8-15 when high
+  static long histogram(long code, int pegs, boolean high) {
+    long counts = 0;
+    for (int peg = 0; peg < pegs; peg++) {
+      int color = (int) (code >>> (peg * BITS_PER_PEG)) & (MAX_COLORS - 1);
+      if ((color >= 8) == high) {
+        counts += 1L << ((color & 7) << 3);
+      }
+    }
+    return counts;
+  }
+
+  // sums the bytewise minimum of two histograms whose counts stay below 128
+  static int sumOfMins(long a, long b) {
+    // the high bit of each byte survives exactly where a >= b
+    long atLeast = (((a | BYTE_HIGHS) - b) & BYTE_HIGHS) >>> 7;
+    long takeB = atLeast * 0xFF;
+    long mins = (b & takeB) | (a & ~takeB);
+    return (int) ((mins * BYTE_ONES) >>> 56);
+  }
+
+  // combines the two feedback numbers
+  static int feedback(int exact, int outOfPlace) {
+    return (exact << BITS_PER_PEG) | outOfPlace;
+  }
+
+  // the pegs with the right color in the right place
+  static int exact(int feedback) {
+    return feedback >>> BITS_PER_PEG;
+  }
+
+  // the pegs with the right color in the wrong place
+  static int outOfPlace(int feedback) {
+    return feedback & (MAX_COLORS - 1);
+  }
+}
@@ -0,0 +1,195 @@
+package mastermind;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// fork-join pools shared by every solver with the same parallelism, so solvers
+// can be created per game without starting threads each time
+class SolverPools {
+  static Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+  // the shared pool with the given parallelism
+  static ForkJoinPool withParallelism(int parallelism) {
+    return pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+  }
+}
+
+// finds the minimax guess among a range of guesses, splitting the range across the pool;
+// the answer is {guess, worst}, or {-1, MAX_VALUE} when no guess in the range is scored
+class MinimaxTask extends RecursiveTask<int[]> {
+  private static final long serialVersionUID = 1L;
+  // about this many scores per leaf keeps the forking overhead small
+  static final int LEAF_WORK = 1 << 16;
+
+  KnuthSolver solver;
+  int from;
+  int to;
+  // the best worst case found by any task so far, for pruning
+  AtomicInteger bound;
+
+  MinimaxTask(KnuthSolver solver, int from, int to, AtomicInteger bound) {
+    this.solver = solver;
+    this.from = from;
+    this.to = to;
+    this.bound = bound;
+  }
+
+  protected int[] compute() {
+    int grain = Math.max(1, LEAF_WORK / Math.max(1, this.solver.candidateCount));
+    if (this.to - this.from <= grain) {
+      return this.computeLeaf();
+    } else {
+      int middle = (this.from + this.to) >>> 1;
+      MinimaxTask left = new MinimaxTask(this.solver, this.from, middle, this.bound);
+      MinimaxTask right = new MinimaxTask(this.solver, middle, this.to, this.bound);
+      left.fork();
+      int[] rightBest = right.compute();
+      int[] leftBest = left.join();
+      return this.better(leftBest, rightBest);
+    }
+  }
+
+  // scores the range on this thread with its own histogram
+  int[] computeLeaf() {
+    int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+    int best = -1;
+    int bestWorst = Integer.MAX_VALUE;
+    for (int guess = this.from; guess < this.to; guess++) {
+      if (!this.solver.isWorthScoring(guess)) {
+        continue;
+      }
+      // pruning only above the bound keeps every guess that could still tie the winner
+      int worst = this.solver.worstCase(guess, Math.min(bestWorst, this.bound.get()), histogram);
+      if (best == -1 || this.solver.isBetter(guess, worst, best, bestWorst)) {
+        best = guess;
+        bestWorst = worst;
+        this.bound.accumulateAndGet(worst, Math::min);
+      }
+    }
+    return new int[] {best, bestWorst};
+  }
+
+  // picks the better of two answers the same way the sequential search does
+  int[] better(int[] first, int[] second) {
+    if (first[0] == -1) {
+      return second;
+    } else if (second[0] == -1) {
+      return first;
+    } else if (this.solver.isBetter(second[0], second[1], first[0], first[1])) {
+      return second;
+    } else {
+      return first;
+    }
+  }
+}
+
+// counts how a guess splits a range of the candidates, one histogram per leaf merged on join
+class PartitionTask extends RecursiveTask<int[]> {
+  private static final long serialVersionUID = 1L;
+  static final int LEAF_SIZE = 1 << 14;
+
+  IScorer scorer;
+  int guess;
+  int[] candidates;
+  int from;
+  int to;
+
+  PartitionTask(IScorer scorer, int guess, int[] candidates, int from, int to) {
+    this.scorer = scorer;
+    this.guess = guess;
+    this.candidates = candidates;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected int[] compute() {
+    if (this.to - this.from <= LEAF_SIZE) {
+      int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+      this.scorer.partition(this.guess, this.candidates, this.from, this.to, histogram, Integer.MAX_VALUE);
+      return histogram;
+    } else {
+      int middle = (this.from + this.to) >>> 1;
+      PartitionTask left = new PartitionTask(this.scorer, this.guess, this.candidates, this.from, middle);
+      PartitionTask right = new PartitionTask(this.scorer, this.guess, this.candidates, middle, this.to);
+      left.fork();
+      int[] merged = right.compute();
+      int[] leftCounts = left.join();
+      for (int feedback = 0; feedback < merged.length; feedback++) {
+        merged[feedback] += leftCounts[feedback];
+      }
+      return merged;
+    }
+  }
+}
+
+// filters a range of a candidate set's words, each leaf writing only its own words
+class FilterTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  CandidateSet candidates;
+  long guess;
+  int feedback;
+  int from;
+  int to;
+
+  FilterTask(CandidateSet candidates, long guess, int feedback, int from, int to) {
+    this.candidates = candidates;
+    this.guess = guess;
+    this.feedback = feedback;
+    this.from = from;
+    this.to = to;
+  }
+
+  protected void compute() {
+    if (this.to - this.from <= CandidateSet.LEAF_WORDS) {
+      this.candidates.filterWords(this.guess, this.feedback, this.from, this.to);
+    } else {
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new FilterTask(this.candidates, this.guess, this.feedback, this.from, middle),
+          new FilterTask(this.candidates, this.guess, this.feedback, middle, this.to));
+    }
+  }
+}
+
+// scores a range of a candidate set's words against a guess, see CandidateSet.partition;
+// each half knows where its scores start from the candidates of the words before it, and
+// the answer is the range's partition sizes
+class ScoreTask extends RecursiveTask<int[]> {
+  private static final long serialVersionUID = 1L;
+  CandidateSet candidates;
+  long guess;
+  byte[] scores;
+  int from;
+  int to;
+  int offset;
+
+  ScoreTask(CandidateSet candidates, long guess, byte[] scores, int from, int to, int offset) {
+    this.candidates = candidates;
+    this.guess = guess;
+    this.scores = scores;
+    this.from = from;
+    this.to = to;
+    this.offset = offset;
+  }
+
+  protected int[] compute() {
+    if (this.to - this.from <= CandidateSet.LEAF_WORDS) {
+      int[] sizes = new int[PackedCode.FEEDBACK_SIZE];
+      this.candidates.partitionWords(this.guess, this.scores, sizes, this.from, this.to, this.offset);
+      return sizes;
+    }
+    int middle = (this.from + this.to) >>> 1;
+    int upperOffset = this.offset + this.candidates.countWords(this.from, middle);
+    ScoreTask upper = new ScoreTask(this.candidates, this.guess, this.scores, middle, this.to, upperOffset);
+    upper.fork();
+    int[] sizes = new ScoreTask(this.candidates, this.guess, this.scores, this.from, middle, this.offset).compute();
+    int[] upperSizes = upper.join();
+    for (int feedback = 0; feedback < sizes.length; feedback++) {
+      sizes[feedback] += upperSizes[feedback];
+    }
+    return sizes;
+  }
+}
@@ -0,0 +1,181 @@
+package mastermind;
+
+import tester.*;                // The tester library
+import javalib.worldimages.*;   // images, like RectangleImage or OverlayImages
+import javalib.funworld.*;      // the abstract World class and the big-bang library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// images are immutable, so every frame can share them: circles and texts by color,
+// and whole rows of pegs by the list they draw, so a finished row or the palette is
+// one placed image instead of a new circle per peg every frame. Lookups are keyed by
+// the color, the text and small ints as they are, so a frame builds no keys
+class RenderCache {
+  static Color CLEAR = new Color(0, 0, 0, 0);
+  // the clear square behind every peg spot
+  static final WorldImage CELL = new RectangleImage(MMGame.CIRC_SPACING, MMGame.CIRC_SPACING,
+          OutlineMode.SOLID, CLEAR);
+  // the texts of the numbers a board shows, so drawing one needs no new string
+  static final String[] NUMBERS = new String[100];
+
+  static {
+    for (int i = 0; i < NUMBERS.length; i++) {
+      NUMBERS[i] = Integer.toString(i);
+    }
+  }
+
+  static Map<Color, WorldImage> solidCircles = new ConcurrentHashMap<>();
+  static Map<Color, WorldImage> outlineCircles = new ConcurrentHashMap<>();
+  // by color, then by text
+  static Map<Color, Map<String, WorldImage>> texts = new ConcurrentHashMap<>();
+  static Map<Color, Map<String, WorldImage>> labels = new ConcurrentHashMap<>();
+  static Map<Integer, WorldImage> covers = new ConcurrentHashMap<>();
+  static Map<Integer, WorldImage> blankRows = new ConcurrentHashMap<>();
+  // keyed by the list itself, so rows are dropped once no game holds their list
+  static Map<ILoColor, WorldImage> rows = Collections.synchronizedMap(new WeakHashMap<>());
+  static Map<ILoColor, WorldImage> palettes = Collections.synchronizedMap(new WeakHashMap<>());
+
+  // a filled peg of the given color
+  static WorldImage solidCircle(Color color) {
+    return solidCircles.computeIfAbsent(color,
+        c -> new CircleImage(MMGame.CIRC_SIZE, OutlineMode.SOLID, c));
+  }
+
+  // an empty peg hole of the given color
+  static WorldImage outlineCircle(Color color) {
+    return outlineCircles.computeIfAbsent(color,
+        c -> new CircleImage(MMGame.CIRC_SIZE, OutlineMode.OUTLINE, c));
+  }
+
+  // text at peg size in the given color
+  static WorldImage text(String text, Color color) {
+    return cachedText(texts, text, color, MMGame.CIRC_SIZE);
+  }
+
+  // a number at peg size in the given color
+  static WorldImage number(int number, Color color) {
+    return text(number < NUMBERS.length ? NUMBERS[number] : Integer.toString(number), color);
+  }
+
+  // the text from the cache, made at the given size the first time; looked up without
+  // computeIfAbsent, whose lambda would capture the text and color on every call
+  static WorldImage cachedText(Map<Color, Map<String, WorldImage>> cache, String text, Color color, int size) {
+    Map<String, WorldImage> byText = cache.get(color);
+    if (byText == null) {
+      byText = cache.computeIfAbsent(color, c -> new ConcurrentHashMap<>());
+    }
+    WorldImage image = byText.get(text);
+    if (image == null) {
+      image = new TextImage(text, size, color);
+      WorldImage raced = byText.putIfAbsent(text, image);
+      image = raced == null ? image : raced;
+    }
+    return image;
+  }
+
+  // the black rectangle hiding a code of the given number of pegs
+  static WorldImage cover(int pegs) {
+    return covers.computeIfAbsent(pegs,
+        n -> new RectangleImage(MMGame.scale(n), MMGame.scale(1), OutlineMode.SOLID, Color.BLACK));
+  }
+
+  // one peg spot of a row, exactly a spacing wide so rows line up with single pegs
+  static WorldImage cell(WorldImage content) {
+    return new OverlayImage(content, CELL);
+  }
+
+  // the pegs of the list side by side
+  static WorldImage row(ILoColor colors) {
+    WorldImage cached = rows.get(colors);
+    if (cached == null) {
+      cached = new EmptyImage();
+      for (int i = 0; i < colors.length(); i++) {
+        cached = new BesideImage(cached, cell(solidCircle(colors.getIndex(i))));
+      }
+      rows.put(colors, cached);
+    }
+    return cached;
+  }
+
+  // the palette in rows of the given number of columns, each peg labeled with the number
+  // that types it, the same way as rows
+  static WorldImage palette(ILoColor colors, int columns) {
+    WorldImage cached = palettes.get(colors);
+    if (cached == null) {
+      Color[] all = new Color[colors.length()];
+      colors.copyInto(all, 0);
+      cached = new EmptyImage();
+      for (int start = 0; start < all.length; start += columns) {
+        WorldImage row = new EmptyImage();
+        for (int i = start; i < Math.min(start + columns, all.length); i++) {
+          row = new BesideImage(row, cell(new OverlayImage(labelText(i + 1, all[i]), solidCircle(all[i]))));
+        }
+        // a short last row is padded, so every row starts at the first column
+        for (int i = all.length; i < start + columns; i++) {
+          row = new BesideImage(row, cell(new EmptyImage()));
+        }
+        cached = new AboveImage(cached, row);
+      }
+      palettes.put(colors, cached);
+    }
+    return cached;
+  }
+
+  // a peg's number in whichever of black and white shows up on its color
+  static WorldImage labelText(int number, Color peg) {
+    int brightness = peg.getRed() * 299 + peg.getGreen() * 587 + peg.getBlue() * 114;
+    Color ink = brightness > 128000 ? Color.BLACK : Color.WHITE;
+    String text = number < NUMBERS.length ? NUMBERS[number] : Integer.toString(number);
+    return cachedText(labels, text, ink, MMGame.CIRC_SIZE * 3 / 4);
+  }
+
+  // a row of the given number of empty peg holes
+  static WorldImage blankRow(int count) {
+    return blankRows.computeIfAbsent(count, n -> {
+      WorldImage blanks = new EmptyImage();
+      for (int i = 0; i < n; i++) {
+        blanks = new BesideImage(blanks, cell(outlineCircle(Color.BLACK)));
+      }
+      return blanks;
+    });
+  }
+
+  // places a row of count pegs whose first peg is centered on leftX
+  static WorldScene placeRow(WorldScene bg, WorldImage row, int count, int leftX, int y) {
+    if (count == 0) {
+      return bg;
+    }
+    return bg.placeImageXY(row, leftX + (count - 1) * MMGame.CIRC_SPACING / 2, y);
+  }
+}
+
+class ExamplesRenderCache {
+  ILoColor justRed = new ConsLoColor(Color.RED, new MtLoColor());
+  ILoColor blueRed = new ConsLoColor(Color.BLUE, justRed);
+  ILoColor wide = MMGame.makePalette(40);
+
+  boolean testSharedImages(Tester tester) {
+    return tester.checkExpect(RenderCache.solidCircle(Color.RED) == RenderCache.solidCircle(Color.RED), true)
+            && tester.checkExpect(RenderCache.outlineCircle(Color.RED) == RenderCache.solidCircle(Color.RED), false)
+            && tester.checkExpect(RenderCache.text("3", Color.GREEN) == RenderCache.text("3", Color.GREEN), true)
+            && tester.checkExpect(RenderCache.text("3", Color.GREEN) == RenderCache.text("3", Color.ORANGE), false)
+            && tester.checkExpect(RenderCache.number(3, Color.GREEN) == RenderCache.text("3", Color.GREEN), true)
+            && tester.checkExpect(RenderCache.labelText(3, Color.YELLOW) == RenderCache.text("3", Color.BLACK), false)
+            && tester.checkExpect(RenderCache.cover(4) == RenderCache.cover(4), true)
+            && tester.checkExpect(RenderCache.cover(4) == RenderCache.cover(5), false);
+  }
+
+  boolean testRows(Tester tester) {
+    // rows belong to the list object, not to an equal list
+    ILoColor otherBlueRed = new ConsLoColor(Color.BLUE, new ConsLoColor(Color.RED, new MtLoColor()));
+    return tester.checkExpect(RenderCache.row(blueRed) == RenderCache.row(blueRed), true)
+            && tester.checkExpect(RenderCache.row(blueRed) == RenderCache.row(otherBlueRed), false)
+            && tester.checkExpect(RenderCache.blankRow(4) == RenderCache.blankRow(4), true)
+            && tester.checkExpect(RenderCache.palette(wide, 16) == RenderCache.palette(wide, 16), true)
+            && tester.checkExpect(RenderCache.labelText(3, Color.BLACK) == RenderCache.labelText(3, Color.YELLOW), false);
+  }
+}
@@ -0,0 +1,338 @@
+package mastermind;
+
+import tester.*;                // The tester library
+import javalib.funworld.*;      // the abstract World class and the big-bang library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.imageio.ImageIO;
+
+// one image to make: a game of the log after some of its guesses
+class ReplayFrame {
+  GameRecord game;
+  int gameNumber;
+  int guesses;
+  // the game's board size, the same for all its frames
+  int width;
+  int height;
+
+  ReplayFrame(GameRecord game, int gameNumber, int guesses, int width, int height) {
+    this.game = game;
+    this.gameNumber = gameNumber;
+    this.guesses = guesses;
+    this.width = width;
+    this.height = height;
+  }
+
+  // the board after the guesses, with the secret shown once the game is over
+  WorldScene scene() {
+    MMGame state = this.game.replay(this.guesses);
+    return this.guesses == this.game.guessCount() ? state.drawRevealed() : state.drawBoard();
+  }
+}
+
+// writes opaque images as 8-bit RGB PNGs, built for speed over size: every row is filtered by
+// its left neighbor, which turns a board's flat runs of color into zeros, and deflated at
+// BEST_SPEED; ImageIO's writer tries every filter on every row and is several times slower.
+// The buffers are kept between images, so an encoder belongs to one thread
+class PngEncoder {
+  static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  static final int FILTER_SUB = 1;
+
+  Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+  CRC32 crc = new CRC32();
+  byte[] raw = new byte[0];
+  byte[] compressed = new byte[1 << 16];
+
+  // writes the image to the stream
+  void write(BufferedImage image, OutputStream stream) throws IOException {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = image.getType() == BufferedImage.TYPE_INT_RGB
+            ? ((DataBufferInt) image.getRaster().getDataBuffer()).getData()
+            : image.getRGB(0, 0, width, height, null, 0, width);
+    int stride = 1 + 3 * width;
+    if (this.raw.length < height * stride) {
+      this.raw = new byte[height * stride];
+    }
+    byte[] raw = this.raw;
+    for (int y = 0; y < height; y++) {
+      int at = y * stride;
+      raw[at] = FILTER_SUB;
+      int left = 0;
+      for (int x = 0; x < width; x++) {
+        int pixel = pixels[y * width + x];
+        raw[at + 1 + 3 * x] = (byte) ((pixel >>> 16) - (left >>> 16));
+        raw[at + 2 + 3 * x] = (byte) ((pixel >>> 8) - (left >>> 8));
+        raw[at + 3 + 3 * x] = (byte) (pixel - left);
+        left = pixel;
+      }
+    }
+
+    this.deflater.reset();
+    this.deflater.setInput(raw, 0, height * stride);
+    this.deflater.finish();
+    int length = 0;
+    while (!this.deflater.finished()) {
+      if (length == this.compressed.length) {
+        this.compressed = Arrays.copyOf(this.compressed, length * 2);
+      }
+      length += this.deflater.deflate(this.compressed, length, this.compressed.length - length);
+    }
+
+    DataOutputStream out = new DataOutputStream(stream);
+    out.write(SIGNATURE);
+    byte[] header = new byte[13];
+    putInt(header, 0, width);
+    putInt(header, 4, height);
+    // 8 bits per channel, truecolor, deflate, adaptive filtering, no interlace
+    header[8] = 8;
+    header[9] = 2;
+    this.chunk(out, "IHDR", header, header.length);
+    this.chunk(out, "IDAT", this.compressed, length);
+    this.chunk(out, "IEND", header, 0);
+    out.flush();
+  }
+
+  // writes one chunk: its length, type, data and the CRC of type and data
+  void chunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+    byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+    out.writeInt(length);
+    out.write(name);
+    out.write(data, 0, length);
+    this.crc.reset();
+    this.crc.update(name);
+    this.crc.update(data, 0, length);
+    out.writeInt((int) this.crc.getValue());
+  }
+
+  static void putInt(byte[] bytes, int at, int value) {
+    bytes[at] = (byte) (value >>> 24);
+    bytes[at + 1] = (byte) (value >>> 16);
+    bytes[at + 2] = (byte) (value >>> 8);
+    bytes[at + 3] = (byte) value;
+  }
+}
+
+// turns logged games into PNG frames without a window, one frame per guess plus the empty
+// board, in directory/game-NNNNNN/frame-NN.png. Frames of every game are shared out on a
+// pool; each worker keeps its own image and PNG encoder and draws scenes built from
+// RenderCache's shared images, so a frame costs a draw and an encode and nothing is set up
+// twice. Works in a java.awt.headless=true JVM, which main turns on
+class ReplayRenderer {
+  static final Color BACKGROUND = Color.WHITE;
+
+  File directory;
+  int workers;
+
+  ThreadLocal<BufferedImage> images = new ThreadLocal<>();
+  ThreadLocal<PngEncoder> encoders = ThreadLocal.withInitial(PngEncoder::new);
+
+  ReplayRenderer(File directory, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("must have at least one worker");
+    }
+    this.directory = directory;
+    this.workers = workers;
+  }
+
+  // renders every game of the log, returns how many frames were written
+  int render(File log) throws IOException {
+    List<GameRecord> games = new ArrayList<>();
+    GameLog.forEach(log, games::add);
+    return this.render(games);
+  }
+
+  // renders every state of the games on the pool
+  int render(List<GameRecord> games) throws IOException {
+    List<ReplayFrame> frames = new ArrayList<>();
+    for (int game = 0; game < games.size(); game++) {
+      Files.createDirectories(this.gameDirectory(game).toPath());
+      MMGame empty = games.get(game).replay(0);
+      for (int guesses = 0; guesses <= games.get(game).guessCount(); guesses++) {
+        frames.add(new ReplayFrame(games.get(game), game, guesses, empty.width(), empty.height()));
+      }
+    }
+    AtomicInteger next = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(this.workers);
+    try {
+      List<Future<?>> parts = new ArrayList<>();
+      for (int worker = 0; worker < this.workers; worker++) {
+        parts.add(pool.submit(() -> {
+          for (int frame = next.getAndIncrement(); frame < frames.size(); frame = next.getAndIncrement()) {
+            this.write(frames.get(frame));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> part : parts) {
+        part.get();
+      }
+    } catch (Exception e) {
+      throw new IOException("rendering failed", e);
+    } finally {
+      pool.shutdownNow();
+      // the threads are gone, so are their images and encoders
+      this.images = new ThreadLocal<>();
+      this.encoders = ThreadLocal.withInitial(PngEncoder::new);
+    }
+    return frames.size();
+  }
+
+  // draws and saves one frame
+  void write(ReplayFrame frame) throws IOException {
+    BufferedImage image = this.draw(frame.scene(), frame.width, frame.height);
+    this.writePng(image, this.frameFile(frame.gameNumber, frame.guesses));
+  }
+
+  // the scene drawn on this thread's image, which is reused while frames keep its size
+  BufferedImage draw(WorldScene scene, int width, int height) {
+    BufferedImage image = this.images.get();
+    if (image == null || image.getWidth() != width || image.getHeight() != height) {
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      this.images.set(image);
+    }
+    Graphics2D graphics = image.createGraphics();
+    try {
+      graphics.setColor(BACKGROUND);
+      graphics.fillRect(0, 0, width, height);
+      scene.draw(graphics);
+    } finally {
+      graphics.dispose();
+    }
+    return image;
+  }
+
+  // encodes the image with this thread's encoder
+  void writePng(BufferedImage image, File file) throws IOException {
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      this.encoders.get().write(image, out);
+    }
+  }
+
+  File gameDirectory(int game) {
+    return new File(this.directory, String.format("game-%06d", game));
+  }
+
+  File frameFile(int game, int guesses) {
+    return new File(this.gameDirectory(game), String.format("frame-%02d.png", guesses));
+  }
+
+  // renders a game log: log directory [workers]
+  public static void main(String[] args) throws IOException {
+    if (System.getProperty("java.awt.headless") == null) {
+      System.setProperty("java.awt.headless", "true");
+    }
+    if (args.length < 2) {
+      System.err.println("usage: ReplayRenderer log directory [workers]");
+      System.exit(2);
+    }
+    int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    long start = System.nanoTime();
+    int frames = new ReplayRenderer(new File(args[1]), workers).render(new File(args[0]));
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.printf("%d frames in %.1f s, %.0f frames/s%n", frames, seconds, frames / seconds);
+  }
+}
+
+class ExamplesReplayRenderer {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+
+  // a log of finished games played by the solver
+  File log(int games) throws IOException {
+    File file = File.createTempFile("replay", ".mmgl");
+    file.delete();
+    file.deleteOnExit();
+    try (GameLogWriter writer = new GameLogWriter(file)) {
+      for (int seed = 0; seed < games; seed++) {
+        MMGame start = new MMGame(true, 4, 10, MMGame.makePalette(6), new MtLoColor(), new MtLoGuess(), new Random(seed));
+        writer.record(new KnuthSolver(classic).play(start), 0, null);
+      }
+    }
+    return file;
+  }
+
+  boolean testFrames(Tester tester) throws IOException {
+    File log = this.log(6);
+    List<GameRecord> games = new ArrayList<>();
+    GameLog.forEach(log, games::add);
+    int expected = 0;
+    for (GameRecord game : games) {
+      expected += game.guessCount() + 1;
+    }
+    File directory = Files.createTempDirectory("frames").toFile();
+    ReplayRenderer renderer = new ReplayRenderer(directory, 3);
+    int frames = renderer.render(log);
+    BufferedImage last = ImageIO.read(renderer.frameFile(5, games.get(5).guessCount()));
+    MMGame board = games.get(5).replay(0);
+    return tester.checkExpect(frames, expected)
+            && tester.checkExpect(renderer.frameFile(0, 0).exists(), true)
+            && tester.checkExpect(renderer.frameFile(0, games.get(0).guessCount() + 1).exists(), false)
+            && tester.checkExpect(last.getWidth(), board.width())
+            && tester.checkExpect(last.getHeight(), board.height());
+  }
+
+  boolean testSameOnAnyPool(Tester tester) throws IOException {
+    // frames do not depend on which worker drew them
+    File log = this.log(3);
+    ReplayRenderer one = new ReplayRenderer(Files.createTempDirectory("frames").toFile(), 1);
+    ReplayRenderer four = new ReplayRenderer(Files.createTempDirectory("frames").toFile(), 4);
+    one.render(log);
+    four.render(log);
+    for (int guesses = 0; one.frameFile(2, guesses).exists(); guesses++) {
+      if (!tester.checkExpect(Files.readAllBytes(four.frameFile(2, guesses).toPath()),
+              Files.readAllBytes(one.frameFile(2, guesses).toPath()))) {
+        return false;
+      }
+    }
+    return tester.checkConstructorException(new IllegalArgumentException("must have at least one worker"),
+            "ReplayRenderer", new File("."), 0);
+  }
+
+  boolean testEncoder(Tester tester) throws IOException {
+    // pixels survive a round trip through ImageIO's reader
+    BufferedImage image = new BufferedImage(37, 23, BufferedImage.TYPE_INT_RGB);
+    Random rand = new Random(5);
+    for (int y = 0; y < 23; y++) {
+      for (int x = 0; x < 37; x++) {
+        image.setRGB(x, y, x < 20 ? 0xFFFFFF : rand.nextInt(1 << 24));
+      }
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new PngEncoder().write(image, bytes);
+    BufferedImage read = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+    if (!(tester.checkExpect(read.getWidth(), 37) && tester.checkExpect(read.getHeight(), 23))) {
+      return false;
+    }
+    for (int y = 0; y < 23; y++) {
+      for (int x = 0; x < 37; x++) {
+        if (!tester.checkExpect(read.getRGB(x, y) & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
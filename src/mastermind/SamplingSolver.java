@@ -0,0 +1,418 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// the guesses of a game and their feedback, with each guess's color histograms kept so a
+// code is checked against the whole history without recounting the guesses
+class Constraints {
+  int pegs;
+  long[] guesses = new long[8];
+  long[] lows = new long[8];
+  long[] highs = new long[8];
+  int[] exacts = new int[8];
+  int[] outOfPlaces = new int[8];
+  int count;
+
+  Constraints(int pegs) {
+    this.pegs = pegs;
+  }
+
+  // adds a guess and the feedback it got
+  void add(long guess, int feedback) {
+    if (this.count == this.guesses.length) {
+      int grown = this.count * 2;
+      this.guesses = Arrays.copyOf(this.guesses, grown);
+      this.lows = Arrays.copyOf(this.lows, grown);
+      this.highs = Arrays.copyOf(this.highs, grown);
+      this.exacts = Arrays.copyOf(this.exacts, grown);
+      this.outOfPlaces = Arrays.copyOf(this.outOfPlaces, grown);
+    }
+    this.guesses[this.count] = guess;
+    this.lows[this.count] = PackedCode.histogram(guess, this.pegs, false);
+    this.highs[this.count] = PackedCode.histogram(guess, this.pegs, true);
+    this.exacts[this.count] = PackedCode.exact(feedback);
+    this.outOfPlaces[this.count] = PackedCode.outOfPlace(feedback);
+    this.count += 1;
+  }
+
+  // how far the code is from agreeing with every guess: the pegs by which its feedback
+  // misses each guess's, summed, so 0 exactly when the code could be the secret
+  int distance(long code) {
+    long low = PackedCode.histogram(code, this.pegs, false);
+    long high = PackedCode.histogram(code, this.pegs, true);
+    int distance = 0;
+    for (int i = 0; i < this.count; i++) {
+      int feedback = PackedCode.score(this.guesses[i], this.lows[i], this.highs[i], code, low, high, this.pegs);
+      distance += Math.abs(PackedCode.exact(feedback) - this.exacts[i])
+              + Math.abs(PackedCode.outOfPlace(feedback) - this.outOfPlaces[i]);
+    }
+    return distance;
+  }
+
+  // does the code agree with the guess added last
+  boolean agreesWithLast(long code) {
+    int last = this.count - 1;
+    int feedback = PackedCode.score(this.guesses[last], code, this.pegs);
+    return PackedCode.exact(feedback) == this.exacts[last]
+            && PackedCode.outOfPlace(feedback) == this.outOfPlaces[last];
+  }
+}
+
+// one worker's local search for codes consistent with the history: from a random code it keeps
+// any change of a peg's color or swap of two pegs that does not move it further from
+// consistency, records each consistent code it reaches and starts again from a fresh code,
+// also starting again when STALL_LIMIT changes in a row have not got closer
+class SampleWorker implements Callable<long[]> {
+  static final int STALL_LIMIT = 256;
+
+  SamplingSolver solver;
+  Constraints constraints;
+  Set<Long> found;
+  // the codes the sample still has room for, shared by the workers; a slot is claimed before
+  // a code is added, so racing workers never overfill the sample
+  AtomicInteger room;
+  // the worker's own, since without duplicates drawing a code shuffles the generator's deck
+  SequenceGenerator generator;
+  SplittableRandom rand;
+  long deadline;
+
+  SampleWorker(SamplingSolver solver, Constraints constraints, Set<Long> found, AtomicInteger room,
+               SplittableRandom rand, long deadline) {
+    this.solver = solver;
+    this.constraints = constraints;
+    this.found = found;
+    this.room = room;
+    this.generator = new SequenceGenerator(solver.colors, solver.pegs, solver.duplicatesAllowed);
+    this.rand = rand;
+    this.deadline = deadline;
+  }
+
+  // searches until the sample is full or time is up; the answer is {code, distance} of the
+  // closest code seen, for when nothing consistent turns up
+  public long[] call() {
+    int[] scratch = new int[this.solver.pegs];
+    long code = this.generator.nextPacked(this.rand, scratch);
+    int distance = this.constraints.distance(code);
+    long[] closest = {code, distance};
+    int stalled = 0;
+    for (long step = 0; this.room.get() > 0; step++) {
+      if ((step & 63) == 0 && System.nanoTime() > this.deadline) {
+        break;
+      }
+      if (distance == 0 || stalled > STALL_LIMIT) {
+        if (distance == 0 && !this.found.contains(code) && this.room.getAndDecrement() > 0
+                && !this.found.add(code)) {
+          // another worker added the same code, so the slot is still free
+          this.room.incrementAndGet();
+        }
+        code = this.generator.nextPacked(this.rand, scratch);
+        distance = this.constraints.distance(code);
+        stalled = 0;
+      } else {
+        long next = this.solver.mutate(code, this.rand);
+        int nextDistance = this.constraints.distance(next);
+        stalled = nextDistance < distance ? 0 : stalled + 1;
+        if (nextDistance <= distance) {
+          code = next;
+          distance = nextDistance;
+        }
+      }
+      if (distance < closest[1]) {
+        closest[0] = code;
+        closest[1] = distance;
+      }
+    }
+    return closest;
+  }
+}
+
+// plays configurations too large to enumerate, up to PackedCode's limits: keeps at most
+// sampleSize codes consistent with the history, found by local search on parallel workers
+// within millisPerGuess, and guesses the sample code that splits the sample into the most
+// even parts. Codes that stay consistent are kept from one guess to the next, so the search
+// only tops the sample up. Memory is the sample and the history; time is the budget per
+// guess plus a square of the sample size to pick among it
+class SamplingSolver implements IGuessStrategy {
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+  int sampleSize;
+  long millisPerGuess;
+  SplittableRandom rand;
+
+  // null when the search runs on the calling thread
+  ForkJoinPool pool;
+  int workers;
+
+  Constraints constraints;
+  // the consistent codes, ascending
+  long[] sample = new long[0];
+
+  SamplingSolver(int colors, int pegs, boolean duplicatesAllowed, int sampleSize, long millisPerGuess,
+                 int workers, long seed) {
+    if (!PackedCode.fits(colors, pegs)) {
+      throw new IllegalArgumentException("configuration is too wide to pack");
+    }
+    if (sampleSize < 1) {
+      throw new IllegalArgumentException("sample must hold at least one code");
+    }
+    if (workers < 1) {
+      throw new IllegalArgumentException("parallelism must be at least one");
+    }
+    if (!duplicatesAllowed && pegs > colors) {
+      throw new IllegalArgumentException("not enough colors for a code without duplicates");
+    }
+    this.colors = colors;
+    this.pegs = pegs;
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.sampleSize = sampleSize;
+    this.millisPerGuess = millisPerGuess;
+    this.rand = new SplittableRandom(seed);
+    this.workers = workers;
+    this.pool = workers == 1 ? null : SolverPools.withParallelism(workers);
+    this.constraints = new Constraints(pegs);
+  }
+
+  // a solver for the game's configuration
+  static SamplingSolver of(MMGame game, int sampleSize, long millisPerGuess, int workers, long seed) {
+    return new SamplingSolver(game.possibleColors.length(), game.sequenceLen, game.duplicatesAllowed,
+            sampleSize, millisPerGuess, workers, seed);
+  }
+
+  // the next guess for the game's history
+  public ILoColor nextGuess(MMGame game) {
+    this.sync(game.past, game.possibleColors);
+    return PackedCode.unpack(this.nextGuess(), this.pegs, game.possibleColors);
+  }
+
+  // adds the guesses of the history that have not been seen yet, dropping sample codes they rule out
+  void sync(ILoGuess past, ILoColor palette) {
+    int guessedLen = past.length();
+    for (int i = this.constraints.count; i < guessedLen; i++) {
+      Guess guess = past.getIndex(i);
+      this.record(PackedCode.pack(guess.sequence, palette), PackedCode.feedback(guess.correct, guess.outOfPlace));
+    }
+  }
+
+  // adds a guess and its feedback
+  void record(long guess, int feedback) {
+    this.constraints.add(guess, feedback);
+    int kept = 0;
+    for (long code : this.sample) {
+      if (this.constraints.agreesWithLast(code)) {
+        this.sample[kept] = code;
+        kept += 1;
+      }
+    }
+    this.sample = Arrays.copyOf(this.sample, kept);
+  }
+
+  // tops up the sample and picks the guess among it
+  long nextGuess() {
+    long closest = this.refill();
+    if (this.sample.length == 0) {
+      // nothing consistent turned up in time, so the closest code at least tells something
+      return closest;
+    }
+    int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+    long best = this.sample[0];
+    long bestSquares = Long.MAX_VALUE;
+    for (long guess : this.sample) {
+      Arrays.fill(histogram, 0);
+      long squares = 0;
+      for (long secret : this.sample) {
+        int feedback = PackedCode.score(guess, secret, this.pegs);
+        // adding 2n + 1 to go from n squared to n + 1 squared
+        squares += 2 * histogram[feedback] + 1;
+        histogram[feedback] += 1;
+      }
+      if (squares < bestSquares) {
+        best = guess;
+        bestSquares = squares;
+      }
+    }
+    return best;
+  }
+
+  // searches on every worker until the sample is full or the time per guess is up, and
+  // returns the closest code any worker saw
+  long refill() {
+    Set<Long> found = ConcurrentHashMap.newKeySet();
+    for (long code : this.sample) {
+      found.add(code);
+    }
+    AtomicInteger room = new AtomicInteger(this.sampleSize - found.size());
+    long deadline = System.nanoTime() + this.millisPerGuess * 1_000_000;
+    List<SampleWorker> tasks = new ArrayList<>();
+    for (int worker = 0; worker < this.workers; worker++) {
+      tasks.add(new SampleWorker(this, this.constraints, found, room, this.rand.split(), deadline));
+    }
+    long[] closest = {0, Long.MAX_VALUE};
+    if (this.pool == null) {
+      closest = tasks.get(0).call();
+    } else {
+      for (Future<long[]> result : this.pool.invokeAll(tasks)) {
+        long[] reached;
+        try {
+          reached = result.get();
+        } catch (Exception e) {
+          throw new IllegalStateException("sample search failed", e);
+        }
+        if (reached[1] < closest[1]) {
+          closest = reached;
+        }
+      }
+    }
+    long[] codes = new long[found.size()];
+    int next = 0;
+    for (long code : found) {
+      codes[next] = code;
+      next += 1;
+    }
+    // sorted so the pick among the sample does not depend on the set's order
+    Arrays.sort(codes);
+    this.sample = codes;
+    return closest[0];
+  }
+
+  // the code with one peg given another color, or two pegs swapped; without duplicates the new
+  // color is one the code does not use, so the code stays valid
+  long mutate(long code, SplittableRandom rand) {
+    int peg = rand.nextInt(this.pegs);
+    int shift = peg * PackedCode.BITS_PER_PEG;
+    if (this.pegs > 1 && rand.nextBoolean()) {
+      int other = (peg + 1 + rand.nextInt(this.pegs - 1)) % this.pegs;
+      int otherShift = other * PackedCode.BITS_PER_PEG;
+      long first = (code >>> shift) & (PackedCode.MAX_COLORS - 1);
+      long second = (code >>> otherShift) & (PackedCode.MAX_COLORS - 1);
+      long cleared = code & ~((long) (PackedCode.MAX_COLORS - 1) << shift) & ~((long) (PackedCode.MAX_COLORS - 1) << otherShift);
+      return cleared | (first << otherShift) | (second << shift);
+    }
+    long color = rand.nextInt(this.colors);
+    if (!this.duplicatesAllowed) {
+      if (this.colors == this.pegs) {
+        return code;
+      }
+      while (usesColor(code, this.pegs, (int) color)) {
+        color = rand.nextInt(this.colors);
+      }
+    }
+    return (code & ~((long) (PackedCode.MAX_COLORS - 1) << shift)) | (color << shift);
+  }
+
+  // does any peg of the code have the color
+  static boolean usesColor(long code, int pegs, int color) {
+    for (int peg = 0; peg < pegs; peg++) {
+      if (PackedCode.colorAt(code, pegs, peg) == color) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
+
+class ExamplesSamplingSolver {
+  ILoColor eightColors = MMGame.makePalette(8);
+
+  // does the code agree with every guess of the game, by the list matchers
+  boolean consistentWith(long code, MMGame game) {
+    ILoColor colors = PackedCode.unpack(code, game.sequenceLen, game.possibleColors);
+    for (int i = 0; i < game.past.length(); i++) {
+      Guess guess = game.past.getIndex(i);
+      int exact = guess.sequence.findExact(colors);
+      if (exact != guess.correct || guess.sequence.findInexact(colors) - exact != guess.outOfPlace) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  boolean testSample(Tester tester) {
+    // after a few guesses every sampled code still agrees with the board
+    MMGame game = new MMGame(true, 6, 20, eightColors, new MtLoColor(), new MtLoGuess(), new Random(4));
+    SamplingSolver solver = SamplingSolver.of(game, 40, 200, 1, 9);
+    for (int i = 0; i < 3; i++) {
+      game = game.replaceCurrentAndPlace(solver.nextGuess(game), game.past).processGuess();
+    }
+    solver.sync(game.past, game.possibleColors);
+    solver.refill();
+    for (long code : solver.sample) {
+      if (!tester.checkExpect(consistentWith(code, game), true)) {
+        return false;
+      }
+    }
+    return tester.checkRange(solver.sample.length, 1, 41)
+            && tester.checkExpect(solver.constraints.count, 3);
+  }
+
+  boolean testFillsExactly(Tester tester) {
+    // with every code consistent, racing workers fill the sample to its size and no further,
+    // keeping the codes carried over whatever their value
+    SamplingSolver solver = new SamplingSolver(8, 6, true, 64, 200, 4, 5);
+    long carried = 0x777777L;
+    solver.sample = new long[] {carried};
+    solver.refill();
+    return tester.checkExpect(solver.sample.length, 64)
+            && tester.checkExpect(Arrays.binarySearch(solver.sample, carried) >= 0, true);
+  }
+
+  boolean testParallelWithoutDuplicates(Tester tester) {
+    // workers drawing codes at once never share a deck, so no sampled code repeats a color
+    SamplingSolver solver = new SamplingSolver(16, 10, false, 1 << 14, 2000, 8, 1);
+    solver.refill();
+    String repeated = "none";
+    for (long code : solver.sample) {
+      int seen = 0;
+      for (int peg = 0; peg < 10; peg++) {
+        seen |= 1 << PackedCode.colorAt(code, 10, peg);
+      }
+      if (Integer.bitCount(seen) != 10) {
+        repeated = Long.toHexString(code);
+        break;
+      }
+    }
+    return tester.checkExpect(solver.sample.length, 1 << 14)
+            && tester.checkExpect(repeated, "none");
+  }
+
+  boolean testSolves(Tester tester) {
+    // a space of over four billion codes, on parallel workers
+    ILoColor sixteenColors = MMGame.makePalette(16);
+    MMGame game = new MMGame(true, 8, 40, sixteenColors, new MtLoColor(), new MtLoGuess(), new Random(12));
+    MMGame solved = Simulation.play(game, SamplingSolver.of(game, 16, 100, 2, 3));
+    return tester.checkExpect(solved.isWon(), true);
+  }
+
+  boolean testMutate(Tester tester) {
+    // without duplicates a change never repeats a color
+    SamplingSolver solver = new SamplingSolver(8, 5, false, 8, 10, 1, 1);
+    SplittableRandom rand = new SplittableRandom(2);
+    long code = 0x01234L;
+    for (int i = 0; i < 500; i++) {
+      code = solver.mutate(code, rand);
+      int seen = 0;
+      for (int peg = 0; peg < 5; peg++) {
+        seen |= 1 << PackedCode.colorAt(code, 5, peg);
+      }
+      if (!tester.checkExpect(Integer.bitCount(seen), 5)) {
+        return false;
+      }
+    }
+    return tester.checkConstructorException(new IllegalArgumentException("sample must hold at least one code"),
+            "SamplingSolver", 8, 5, true, 0, 10L, 1, 1L)
+            && tester.checkConstructorException(new IllegalArgumentException("configuration is too wide to pack"),
+            "SamplingSolver", 20, 5, true, 8, 10L, 1, 1L);
+  }
+}
@@ -0,0 +1,783 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// a configuration the fuzzer draws codes from, with what each scoring path needs built once
+// and shared by every worker
+class FuzzConfig {
+  // spaces and tables past these sizes take longer to build than to fuzz
+  static final int MAX_SPACE_CODES = 1 << 14;
+  static final int MAX_TABLE_CODES = 1 << 10;
+
+  static Map<String, FuzzConfig> cache = new ConcurrentHashMap<>();
+
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+
+  ILoColor palette;
+  Color[] paletteColors;
+  // null when the configuration does not pack or has too many codes
+  CodeSpace space;
+  ScoreTable table;
+
+  FuzzConfig(int colors, int pegs, boolean duplicatesAllowed) {
+    this.colors = colors;
+    this.pegs = pegs;
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.palette = MMGame.makePalette(colors);
+    this.paletteColors = new Color[colors];
+    this.palette.copyInto(this.paletteColors, 0);
+    if (PackedCode.fits(colors, pegs)
+                && CodeSpace.countCodes(colors, pegs, duplicatesAllowed) <= MAX_SPACE_CODES) {
+      this.space = new CodeSpace(colors, pegs, duplicatesAllowed);
+      if (this.space.size() <= MAX_TABLE_CODES) {
+        this.table = new ScoreTable(this.space);
+      }
+    }
+  }
+
+  // the shared configuration
+  static FuzzConfig of(int colors, int pegs, boolean duplicatesAllowed) {
+    return cache.computeIfAbsent(FeedbackTables.key(colors, pegs, duplicatesAllowed),
+            key -> new FuzzConfig(colors, pegs, duplicatesAllowed));
+  }
+
+  // can the code be played in this configuration
+  boolean allows(int[] code) {
+    long seen = 0;
+    for (int color : code) {
+      if (color < 0 || color >= this.colors) {
+        return false;
+      }
+      if (!this.duplicatesAllowed) {
+        if ((seen & (1L << color)) != 0) {
+          return false;
+        }
+        seen |= 1L << color;
+      }
+    }
+    return code.length == this.pegs;
+  }
+
+  // the code as a list of colors
+  ILoColor colors(int[] code) {
+    ILoColor sequence = new MtLoColor();
+    for (int peg = code.length - 1; peg >= 0; peg--) {
+      sequence = new ConsLoColor(this.paletteColors[code[peg]], sequence);
+    }
+    return sequence;
+  }
+
+  // the code packed, see PackedCode
+  static long packed(int[] code) {
+    long packed = 0;
+    for (int color : code) {
+      packed = PackedCode.push(packed, color);
+    }
+    return packed;
+  }
+
+  // the code's rank in the space, without searching it: with repeats the code read in base
+  // colors, otherwise each peg counts the unused colors below it times the ways to fill the
+  // pegs after it
+  int indexOf(int[] code) {
+    int index = 0;
+    if (this.duplicatesAllowed) {
+      for (int color : code) {
+        index = index * this.colors + color;
+      }
+      return index;
+    }
+    long used = 0;
+    int ways = this.space.size();
+    for (int peg = 0; peg < code.length; peg++) {
+      int color = code[peg];
+      ways /= this.colors - peg;
+      index += (color - Long.bitCount(used & ((1L << color) - 1))) * ways;
+      used |= 1L << color;
+    }
+    return index;
+  }
+
+  public String toString() {
+    return FeedbackTables.key(this.colors, this.pegs, this.duplicatesAllowed);
+  }
+}
+
+// a guess and a secret, with the forms the scoring paths take worked out once per pair by
+// prepare
+class FuzzPair {
+  FuzzConfig config;
+  int[] guess;
+  int[] secret;
+  long packedGuess;
+  long packedSecret;
+  byte[] wideGuess;
+  byte[] wideSecret;
+  // -1 when the configuration has no code space
+  int guessIndex;
+  int secretIndex;
+
+  FuzzPair(FuzzConfig config, int[] guess, int[] secret) {
+    this.config = config;
+    this.guess = guess;
+    this.secret = secret;
+    this.wideGuess = new byte[guess.length];
+    this.wideSecret = new byte[secret.length];
+  }
+
+  // works out the other forms after the codes change
+  void prepare() {
+    for (int peg = 0; peg < this.guess.length; peg++) {
+      this.wideGuess[peg] = (byte) this.guess[peg];
+      this.wideSecret[peg] = (byte) this.secret[peg];
+    }
+    if (PackedCode.fits(this.config.colors, this.config.pegs)) {
+      this.packedGuess = FuzzConfig.packed(this.guess);
+      this.packedSecret = FuzzConfig.packed(this.secret);
+    }
+    CodeSpace space = this.config.space;
+    this.guessIndex = space == null ? -1 : this.config.indexOf(this.guess);
+    this.secretIndex = space == null ? -1 : this.config.indexOf(this.secret);
+  }
+}
+
+// a scoring path under test, given codes as palette indexes
+interface IScoringPath {
+  // can the path score codes of the configuration
+  boolean supports(FuzzConfig config);
+
+  // the packed feedback of the pair's guess against its secret
+  int score(FuzzPair pair);
+}
+
+// a registered scoring path, tried on one pair in every so many when it is slow
+class FuzzedPath {
+  String name;
+  int every;
+  IScoringPath path;
+
+  FuzzedPath(String name, int every, IScoringPath path) {
+    this.name = name;
+    this.every = every;
+    this.path = path;
+  }
+}
+
+// a pair some path scored differently from the reference, shrunk as far as it still fails
+class Mismatch {
+  String path;
+  FuzzConfig config;
+  int[] guess;
+  int[] secret;
+  int expected;
+  // -1 when the path threw
+  int actual;
+
+  Mismatch(String path, FuzzConfig config, int[] guess, int[] secret, int expected, int actual) {
+    this.path = path;
+    this.config = config;
+    this.guess = guess;
+    this.secret = secret;
+    this.expected = expected;
+    this.actual = actual;
+  }
+
+  // the feedback as the board shows it
+  static String describe(int feedback) {
+    return feedback == -1
+            ? "an exception"
+            : PackedCode.exact(feedback) + " exact, " + PackedCode.outOfPlace(feedback) + " out of place";
+  }
+
+  public String toString() {
+    return this.path + " on " + this.config + ": guess " + Arrays.toString(this.guess)
+            + " against " + Arrays.toString(this.secret) + " should be " + describe(this.expected)
+            + ", got " + describe(this.actual);
+  }
+}
+
+// what a fuzzing run checked and what it found
+class FuzzReport {
+  long pairs;
+  long nanos;
+  List<Mismatch> mismatches;
+
+  FuzzReport(long pairs, long nanos, List<Mismatch> mismatches) {
+    this.pairs = pairs;
+    this.nanos = nanos;
+    this.mismatches = mismatches;
+  }
+
+  public String toString() {
+    return String.format("%d pairs in %.1f s, %.1f M pairs/s, %d mismatches", this.pairs,
+            this.nanos / 1e9, this.pairs * 1e3 / Math.max(1, this.nanos), this.mismatches.size());
+  }
+}
+
+// checks every registered scoring path against the list matchers' feedback on random and
+// edge-case pairs across configurations. Batches are seeded by their number, so a run finds
+// the same pairs on any number of workers; the first mismatch stops the run and is shrunk
+// to the fewest pegs and colors, and the lowest colors, that still disagree
+class ScoringFuzzer {
+  // pairs drawn from one configuration before moving to the next
+  static final int BATCH_PAIRS = 4096;
+  static final int MAX_PEGS = WideCode.MAX_PEGS;
+  static final int MAX_COLORS = WideCode.MAX_COLORS;
+  // the list matchers allocate, so they check the reference on one pair in this many
+  static final int LIST_EVERY = 64;
+  // and a whole game, packing its lists on the way, on one in this many
+  static final int GAME_EVERY = 512;
+
+  List<FuzzedPath> paths = new ArrayList<>();
+
+  // adds a path to compare against the reference
+  ScoringFuzzer register(String name, int every, IScoringPath path) {
+    this.paths.add(new FuzzedPath(name, every, path));
+    return this;
+  }
+
+  // a fuzzer over every scoring path the game and the solvers use
+  static ScoringFuzzer withStandardPaths() {
+    return new ScoringFuzzer()
+            .register("list-matchers", LIST_EVERY, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return true;
+              }
+
+              public int score(FuzzPair pair) {
+                ILoColor current = pair.config.colors(pair.guess);
+                ILoColor correct = pair.config.colors(pair.secret);
+                int exact = current.findExact(correct);
+                return PackedCode.feedback(exact, current.findInexact(correct) - exact);
+              }
+            })
+            .register("process-guess", GAME_EVERY, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return true;
+              }
+
+              public int score(FuzzPair pair) {
+                FuzzConfig config = pair.config;
+                MMGame game = new MMGame(config.duplicatesAllowed, config.pegs, 10, config.palette,
+                        config.colors(pair.secret), config.colors(pair.guess), new MtLoGuess(), new Random(), "");
+                Guess placed = game.processGuess().past.getIndex(0);
+                return PackedCode.feedback(placed.correct, placed.outOfPlace);
+              }
+            })
+            .register("packed", 1, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return PackedCode.fits(config.colors, config.pegs);
+              }
+
+              public int score(FuzzPair pair) {
+                return PackedCode.score(pair.packedGuess, pair.packedSecret, pair.config.pegs);
+              }
+            })
+            .register("packed-histograms", 1, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return PackedCode.fits(config.colors, config.pegs);
+              }
+
+              public int score(FuzzPair pair) {
+                long guess = pair.packedGuess;
+                long secret = pair.packedSecret;
+                int pegs = pair.config.pegs;
+                return PackedCode.score(guess, PackedCode.histogram(guess, pegs, false),
+                        PackedCode.histogram(guess, pegs, true), secret, PackedCode.histogram(secret, pegs, false),
+                        PackedCode.histogram(secret, pegs, true), pegs);
+              }
+            })
+            .register("wide", 1, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return WideCode.fits(config.colors, config.pegs);
+              }
+
+              public int score(FuzzPair pair) {
+                return WideCode.score(pair.wideGuess, pair.wideSecret);
+              }
+            })
+            .register("code-space", 1, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return config.space != null;
+              }
+
+              public int score(FuzzPair pair) {
+                return pair.config.space.score(pair.guessIndex, pair.secretIndex);
+              }
+            })
+            .register("code-space-partition", 8, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return config.space != null;
+              }
+
+              public int score(FuzzPair pair) {
+                int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+                int[] secrets = {pair.secretIndex};
+                pair.config.space.partition(pair.guessIndex, secrets, 0, 1, histogram, Integer.MAX_VALUE);
+                return onlyFeedback(histogram);
+              }
+            })
+            .register("score-table", 1, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return config.table != null;
+              }
+
+              public int score(FuzzPair pair) {
+                return pair.config.table.score(pair.guessIndex, pair.secretIndex);
+              }
+            })
+            .register("candidate-partition", 16, new IScoringPath() {
+              public boolean supports(FuzzConfig config) {
+                return config.space != null;
+              }
+
+              public int score(FuzzPair pair) {
+                CodeSpace space = pair.config.space;
+                long[] words = new long[(space.size() + 63) >>> 6];
+                words[pair.secretIndex >>> 6] = 1L << pair.secretIndex;
+                byte[] scores = new byte[1];
+                int[] sizes = new int[PackedCode.FEEDBACK_SIZE];
+                new CandidateSet(space, words).partition(pair.packedGuess, scores, sizes);
+                return scores[0] & 0xFF;
+              }
+            });
+  }
+
+  // the one feedback a single-secret histogram counted
+  static int onlyFeedback(int[] histogram) {
+    for (int feedback = 0; feedback < histogram.length; feedback++) {
+      if (histogram[feedback] != 0) {
+        return feedback;
+      }
+    }
+    return -1;
+  }
+
+  // the feedback the list matchers give, on arrays: pegs equal in place, then each guess peg
+  // taking the first unused secret peg of its color, less the exact ones
+  static int reference(int[] guess, int[] secret, int[] unused) {
+    int exact = 0;
+    for (int peg = 0; peg < guess.length; peg++) {
+      exact += guess[peg] == secret[peg] ? 1 : 0;
+    }
+    for (int color : secret) {
+      unused[color] += 1;
+    }
+    int matches = 0;
+    for (int color : guess) {
+      if (unused[color] > 0) {
+        unused[color] -= 1;
+        matches += 1;
+      }
+    }
+    for (int color : secret) {
+      unused[color] = 0;
+    }
+    return PackedCode.feedback(exact, matches - exact);
+  }
+
+  // the path's feedback for the pair, or -1 when it throws
+  static int scoreOrFail(FuzzedPath path, FuzzPair pair) {
+    try {
+      return path.path.score(pair);
+    } catch (RuntimeException e) {
+      return -1;
+    }
+  }
+
+  // checks the given number of pairs on a pool of workers, stopping at the first mismatch
+  FuzzReport run(long pairs, long seed, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("must have at least one worker");
+    }
+    long batches = (pairs + BATCH_PAIRS - 1) / BATCH_PAIRS;
+    AtomicLong nextBatch = new AtomicLong();
+    // the lowest failing batch; batches after it are skipped, ones before still run
+    AtomicLong firstFailure = new AtomicLong(Long.MAX_VALUE);
+    Map<Long, Mismatch> found = new ConcurrentHashMap<>();
+    AtomicLong checked = new AtomicLong();
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> parts = new ArrayList<>();
+      for (int worker = 0; worker < workers; worker++) {
+        parts.add(pool.submit(() -> {
+          FuzzWorker fuzzWorker = new FuzzWorker(this);
+          long batch = nextBatch.getAndIncrement();
+          while (batch < batches && batch < firstFailure.get()) {
+            int size = (int) Math.min(BATCH_PAIRS, pairs - batch * BATCH_PAIRS);
+            Mismatch mismatch = fuzzWorker.runBatch(Simulation.gameSeed(seed, batch), size);
+            checked.addAndGet(fuzzWorker.checked);
+            if (mismatch != null) {
+              found.put(batch, mismatch);
+              firstFailure.accumulateAndGet(batch, Math::min);
+            }
+            batch = nextBatch.getAndIncrement();
+          }
+        }));
+      }
+      for (Future<?> part : parts) {
+        part.get();
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("fuzzing failed", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    List<Mismatch> mismatches = new ArrayList<>();
+    if (!found.isEmpty()) {
+      Mismatch first = found.get(firstFailure.get());
+      mismatches.add(this.shrink(first));
+    }
+    return new FuzzReport(checked.get(), System.nanoTime() - start, mismatches);
+  }
+
+  // the smallest failing pair reachable from the mismatch by dropping pegs, dropping colors,
+  // allowing repeats, and lowering a color everywhere or at one peg at a time
+  Mismatch shrink(Mismatch mismatch) {
+    FuzzedPath path = null;
+    for (FuzzedPath registered : this.paths) {
+      if (registered.name.equals(mismatch.path)) {
+        path = registered;
+      }
+    }
+    Mismatch smallest = mismatch;
+    Mismatch smaller = this.shrinkOnce(path, smallest);
+    while (smaller != null) {
+      smallest = smaller;
+      smaller = this.shrinkOnce(path, smallest);
+    }
+    return smallest;
+  }
+
+  // one step smaller that still fails, or null when there is none
+  Mismatch shrinkOnce(FuzzedPath path, Mismatch at) {
+    FuzzConfig config = at.config;
+    int pegs = config.pegs;
+    if (pegs > 1) {
+      for (int drop = 0; drop < pegs; drop++) {
+        Mismatch tried = this.fails(path, FuzzConfig.of(config.colors, pegs - 1, config.duplicatesAllowed),
+                without(at.guess, drop), without(at.secret, drop));
+        if (tried != null) {
+          return tried;
+        }
+      }
+    }
+    int highest = 0;
+    for (int peg = 0; peg < pegs; peg++) {
+      highest = Math.max(highest, Math.max(at.guess[peg], at.secret[peg]));
+    }
+    if (highest + 1 < config.colors) {
+      Mismatch tried = this.fails(path, FuzzConfig.of(highest + 1, pegs, config.duplicatesAllowed),
+              at.guess, at.secret);
+      if (tried != null) {
+        return tried;
+      }
+    }
+    if (!config.duplicatesAllowed) {
+      Mismatch tried = this.fails(path, FuzzConfig.of(config.colors, pegs, true), at.guess, at.secret);
+      if (tried != null) {
+        return tried;
+      }
+    }
+    for (int color = 1; color <= highest; color++) {
+      for (int lower = 0; lower < color && uses(at, color); lower++) {
+        Mismatch tried = this.fails(path, config, recolored(at.guess, color, lower),
+                recolored(at.secret, color, lower));
+        if (tried != null) {
+          return tried;
+        }
+      }
+    }
+    for (int peg = 0; peg < 2 * pegs; peg++) {
+      int[] code = peg < pegs ? at.guess : at.secret;
+      for (int color = 0; color < code[peg % pegs]; color++) {
+        int[] lowered = code.clone();
+        lowered[peg % pegs] = color;
+        Mismatch tried = peg < pegs
+                ? this.fails(path, config, lowered, at.secret)
+                : this.fails(path, config, at.guess, lowered);
+        if (tried != null) {
+          return tried;
+        }
+      }
+    }
+    return null;
+  }
+
+  // the mismatch of the path on the pair, or null when it agrees or the pair is not playable
+  Mismatch fails(FuzzedPath path, FuzzConfig config, int[] guess, int[] secret) {
+    if (!config.allows(guess) || !config.allows(secret) || !path.path.supports(config)) {
+      return null;
+    }
+    int expected = reference(guess, secret, new int[config.colors]);
+    FuzzPair pair = new FuzzPair(config, guess, secret);
+    pair.prepare();
+    int actual = scoreOrFail(path, pair);
+    return expected == actual ? null : new Mismatch(path.name, config, guess, secret, expected, actual);
+  }
+
+  // does either code of the mismatch have a peg of the color
+  static boolean uses(Mismatch at, int color) {
+    for (int peg = 0; peg < at.guess.length; peg++) {
+      if (at.guess[peg] == color || at.secret[peg] == color) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // the code with every peg of one color given another
+  static int[] recolored(int[] code, int from, int to) {
+    int[] recolored = code.clone();
+    for (int peg = 0; peg < code.length; peg++) {
+      if (code[peg] == from) {
+        recolored[peg] = to;
+      }
+    }
+    return recolored;
+  }
+
+  // the code with one peg taken out
+  static int[] without(int[] code, int drop) {
+    int[] shorter = new int[code.length - 1];
+    System.arraycopy(code, 0, shorter, 0, drop);
+    System.arraycopy(code, drop + 1, shorter, drop, shorter.length - drop);
+    return shorter;
+  }
+
+  // fuzzes the standard paths from the command line:
+  //   pairs workers seed
+  public static void main(String[] args) {
+    long pairs = args.length > 0 ? Long.parseLong(args[0]) : 200_000_000L;
+    int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+    FuzzReport report = withStandardPaths().run(pairs, seed, workers);
+    System.out.println(report);
+    for (Mismatch mismatch : report.mismatches) {
+      System.out.println(mismatch);
+    }
+    if (!report.mismatches.isEmpty()) {
+      System.exit(1);
+    }
+  }
+}
+
+// draws pairs for one worker, reusing its arrays between the pairs of a batch
+class FuzzWorker {
+  ScoringFuzzer fuzzer;
+  // unsynchronized, since drawing codes is most of the work per pair
+  SplittableRandom rand;
+  int[] unused = new int[ScoringFuzzer.MAX_COLORS];
+  // the colors of the configuration in some order, for codes without repeats
+  int[] palette = new int[ScoringFuzzer.MAX_COLORS];
+  // the pairs the last batch checked
+  long checked;
+
+  FuzzWorker(ScoringFuzzer fuzzer) {
+    this.fuzzer = fuzzer;
+  }
+
+  // checks one batch of pairs from a configuration the seed picks, returns the first
+  // mismatch or null
+  Mismatch runBatch(long seed, int size) {
+    this.rand = new SplittableRandom(seed);
+    FuzzConfig config = this.pickConfig();
+    for (int color = 0; color < config.colors; color++) {
+      this.palette[color] = color;
+    }
+    int[] guess = new int[config.pegs];
+    int[] secret = new int[config.pegs];
+    FuzzPair fuzzed = new FuzzPair(config, guess, secret);
+    List<FuzzedPath> supported = new ArrayList<>();
+    for (FuzzedPath path : this.fuzzer.paths) {
+      if (path.path.supports(config)) {
+        supported.add(path);
+      }
+    }
+    this.checked = 0;
+    for (int pair = 0; pair < size; pair++) {
+      this.drawPair(config, guess, secret);
+      fuzzed.prepare();
+      int expected = ScoringFuzzer.reference(guess, secret, this.unused);
+      for (FuzzedPath path : supported) {
+        if (pair % path.every == 0 && ScoringFuzzer.scoreOrFail(path, fuzzed) != expected) {
+          return new Mismatch(path.name, config, guess.clone(), secret.clone(), expected,
+                  ScoringFuzzer.scoreOrFail(path, fuzzed));
+        }
+      }
+      this.checked += 1;
+    }
+    return null;
+  }
+
+  // a configuration, mostly ones that pack since most paths only take those
+  FuzzConfig pickConfig() {
+    int colors = this.below(4) == 0
+            ? 1 + this.below(ScoringFuzzer.MAX_COLORS)
+            : 1 + this.below(PackedCode.MAX_COLORS);
+    boolean duplicatesAllowed = this.below(3) != 0;
+    int widest = duplicatesAllowed ? ScoringFuzzer.MAX_PEGS : Math.min(ScoringFuzzer.MAX_PEGS, colors);
+    // half the batches keep to short codes, whose spaces are small enough for the table paths
+    int pegs = 1 + (this.below(2) == 0 ? this.below(Math.min(widest, 6)) : this.below(widest));
+    return FuzzConfig.of(colors, pegs, duplicatesAllowed);
+  }
+
+  // fills in a pair: uniform codes, or an edge case the uniform ones rarely reach
+  void drawPair(FuzzConfig config, int[] guess, int[] secret) {
+    this.randomCode(config, secret);
+    int pegs = secret.length;
+    switch (this.below(6)) {
+      case 1:
+        // the winning guess
+        System.arraycopy(secret, 0, guess, 0, pegs);
+        break;
+      case 2:
+        // every color right, most places wrong
+        System.arraycopy(secret, 0, guess, 0, pegs);
+        this.shuffle(guess);
+        break;
+      case 3:
+        // one peg off, to a color the secret lacks when colors cannot repeat; randomCode left
+        // those after the secret's in the palette
+        System.arraycopy(secret, 0, guess, 0, pegs);
+        if (config.duplicatesAllowed) {
+          guess[this.below(pegs)] = this.below(config.colors);
+        } else if (pegs < config.colors) {
+          guess[this.below(pegs)] = this.palette[pegs + this.below(config.colors - pegs)];
+        }
+        break;
+      case 4:
+        // only the lowest and highest colors, so repeats pile up
+        if (config.duplicatesAllowed) {
+          this.extremeCode(config, guess);
+          this.extremeCode(config, secret);
+        } else {
+          this.randomCode(config, guess);
+        }
+        break;
+      default:
+        this.randomCode(config, guess);
+    }
+  }
+
+  // a number from zero up to but not including the bound, from the high bits of one draw
+  // without the retries of nextInt; the bias is under bound / 2^32, too small to matter here
+  int below(int bound) {
+    return (int) (((this.rand.nextInt() & 0xFFFFFFFFL) * bound) >>> 32);
+  }
+
+  // a uniform code of the configuration
+  void randomCode(FuzzConfig config, int[] code) {
+    if (config.duplicatesAllowed) {
+      for (int peg = 0; peg < code.length; peg++) {
+        code[peg] = this.below(config.colors);
+      }
+    } else {
+      // the first pegs of a partly shuffled palette; any order of it shuffles as well as
+      // the sorted one, so it is only reset between configurations
+      int[] palette = this.palette;
+      for (int peg = 0; peg < code.length; peg++) {
+        int other = peg + this.below(config.colors - peg);
+        int color = palette[other];
+        palette[other] = palette[peg];
+        palette[peg] = color;
+        code[peg] = color;
+      }
+    }
+  }
+
+  // a code of only the first and last colors
+  void extremeCode(FuzzConfig config, int[] code) {
+    for (int peg = 0; peg < code.length; peg++) {
+      code[peg] = this.below(2) == 0 ? 0 : config.colors - 1;
+    }
+  }
+
+  // shuffles the code in place
+  void shuffle(int[] code) {
+    for (int peg = code.length - 1; peg > 0; peg--) {
+      int other = this.below(peg + 1);
+      int swap = code[peg];
+      code[peg] = code[other];
+      code[other] = swap;
+    }
+  }
+}
+
+class ExamplesScoringFuzzer {
+  // packed scoring that counts one too many out of place whenever the guess repeats a color
+  IScoringPath repeatsBug = new IScoringPath() {
+    public boolean supports(FuzzConfig config) {
+      return PackedCode.fits(config.colors, config.pegs);
+    }
+
+    public int score(FuzzPair pair) {
+      int feedback = PackedCode.score(pair.packedGuess, pair.packedSecret, pair.config.pegs);
+      for (int peg = 1; peg < pair.guess.length; peg++) {
+        if (pair.guess[peg] == pair.guess[0]) {
+          return feedback + 1;
+        }
+      }
+      return feedback;
+    }
+  };
+
+  boolean testAgrees(Tester tester) {
+    // every path gives the list matchers' feedback, and codes are ranked as the space does
+    FuzzReport report = ScoringFuzzer.withStandardPaths().run(300_000, 5, 2);
+    int[] unused = new int[4];
+    FuzzConfig noRepeats = FuzzConfig.of(5, 3, false);
+    for (int index = 0; index < noRepeats.space.size(); index++) {
+      long code = noRepeats.space.code(index);
+      int[] colors = {PackedCode.colorAt(code, 3, 0), PackedCode.colorAt(code, 3, 1), PackedCode.colorAt(code, 3, 2)};
+      if (!tester.checkExpect(noRepeats.indexOf(colors), index)) {
+        return false;
+      }
+    }
+    return tester.checkExpect(report.mismatches.size(), 0)
+            && tester.checkExpect(report.pairs, 300_000L)
+            && tester.checkExpect(ScoringFuzzer.reference(new int[]{0, 0, 1, 2}, new int[]{0, 1, 0, 3}, unused),
+            PackedCode.feedback(1, 2))
+            && tester.checkExpect(unused, new int[4]);
+  }
+
+  boolean testShrinks(Tester tester) {
+    // the bug is caught and cut down to two pegs of one color
+    ScoringFuzzer fuzzer = ScoringFuzzer.withStandardPaths().register("repeats-bug", 1, repeatsBug);
+    FuzzReport report = fuzzer.run(100_000, 5, 3);
+    Mismatch shrunk = report.mismatches.get(0);
+    return tester.checkExpect(report.mismatches.size(), 1)
+            && tester.checkExpect(shrunk.path, "repeats-bug")
+            && tester.checkExpect(shrunk.config.toString(), "1x2")
+            && tester.checkExpect(shrunk.guess, new int[]{0, 0})
+            && tester.checkExpect(shrunk.expected, PackedCode.feedback(2, 0))
+            && tester.checkExpect(shrunk.actual, PackedCode.feedback(2, 1))
+            && tester.checkExpect(report.pairs < 100_000, true);
+  }
+
+  boolean testSameOnAnyPool(Tester tester) {
+    // the first failing batch decides the mismatch, whatever the workers
+    ScoringFuzzer fuzzer = new ScoringFuzzer().register("repeats-bug", 1, repeatsBug);
+    Mismatch alone = fuzzer.run(50_000, 9, 1).mismatches.get(0);
+    Mismatch shared = fuzzer.run(50_000, 9, 4).mismatches.get(0);
+    return tester.checkExpect(shared.toString(), alone.toString())
+            && tester.checkException(new IllegalArgumentException("must have at least one worker"),
+            fuzzer, "run", 10L, 9L, 0);
+  }
+}
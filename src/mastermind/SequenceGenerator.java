@@ -0,0 +1,218 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+
+// draws secret codes as palette indices: one draw per peg when colors may repeat,
+// a partial Fisher-Yates shuffle of the indices when they may not, so no list is
+// rebuilt per peg; any RandomGenerator works, including SplittableRandom and
+// ThreadLocalRandom, and pegs are filled from the last one back like the list version
+class SequenceGenerator {
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+
+  // the palette indices, shuffled in place for codes without duplicates
+  int[] deck;
+
+  SequenceGenerator(int colors, int pegs, boolean duplicatesAllowed) {
+    if (colors < 1 || pegs < 0) {
+      throw new IllegalArgumentException("a code needs at least one color");
+    } else if (!duplicatesAllowed && pegs > colors) {
+      throw new IllegalArgumentException("not enough colors for a code without duplicates");
+    }
+    this.colors = colors;
+    this.pegs = pegs;
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.deck = new int[colors];
+    for (int i = 0; i < colors; i++) {
+      this.deck[i] = i;
+    }
+  }
+
+  // writes the palette index of every peg of a new code into the array
+  void next(RandomGenerator gen, int[] code) {
+    if (this.duplicatesAllowed) {
+      for (int peg = this.pegs - 1; peg >= 0; peg--) {
+        code[peg] = gen.nextInt(this.colors);
+      }
+    } else {
+      // the drawn indices are swapped to the end of the deck's live part, which
+      // leaves the deck a permutation so it never needs resetting
+      int live = this.colors;
+      for (int peg = this.pegs - 1; peg >= 0; peg--) {
+        int pick = gen.nextInt(live);
+        live -= 1;
+        int color = this.deck[pick];
+        this.deck[pick] = this.deck[live];
+        this.deck[live] = color;
+        code[peg] = color;
+      }
+    }
+  }
+
+  // a new code as a list of palette colors
+  ILoColor next(RandomGenerator gen, ILoColor palette) {
+    Color[] colors = new Color[this.colors];
+    palette.copyInto(colors, 0);
+    int[] code = new int[this.pegs];
+    this.next(gen, code);
+    ILoColor sequence = new MtLoColor();
+    for (int peg = this.pegs - 1; peg >= 0; peg--) {
+      sequence = new ConsLoColor(colors[code[peg]], sequence);
+    }
+    return sequence;
+  }
+
+  // a new code packed like PackedCode.pack
+  long nextPacked(RandomGenerator gen, int[] scratch) {
+    this.next(gen, scratch);
+    long packed = 0;
+    for (int peg = 0; peg < this.pegs; peg++) {
+      packed = PackedCode.push(packed, scratch[peg]);
+    }
+    return packed;
+  }
+
+  // fills the range of the array with new packed codes
+  void fill(RandomGenerator gen, long[] codes, int from, int to) {
+    if (!PackedCode.fits(this.colors, this.pegs)) {
+      throw new IllegalArgumentException("configuration is too wide to pack");
+    }
+    int[] scratch = new int[this.pegs];
+    for (int i = from; i < to; i++) {
+      codes[i] = this.nextPacked(gen, scratch);
+    }
+  }
+
+  // count new packed codes drawn across the pool, the same for the same seed at any parallelism
+  static long[] fill(int colors, int pegs, boolean duplicatesAllowed, int count, long seed, ForkJoinPool pool) {
+    long[] codes = new long[count];
+    FillTask task = new FillTask(colors, pegs, duplicatesAllowed, codes, 0, count, new SplittableRandom(seed));
+    if (pool == null) {
+      task.compute();
+    } else {
+      pool.invoke(task);
+    }
+    return codes;
+  }
+}
+
+// fills a range of codes, splitting its random generator along with the range so every
+// leaf draws its own stream no matter which thread runs it
+class FillTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+  static final int LEAF_SIZE = 1 << 16;
+
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+  long[] codes;
+  int from;
+  int to;
+  SplittableRandom gen;
+
+  FillTask(int colors, int pegs, boolean duplicatesAllowed, long[] codes, int from, int to, SplittableRandom gen) {
+    this.colors = colors;
+    this.pegs = pegs;
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.codes = codes;
+    this.from = from;
+    this.to = to;
+    this.gen = gen;
+  }
+
+  protected void compute() {
+    if (this.to - this.from <= LEAF_SIZE) {
+      new SequenceGenerator(this.colors, this.pegs, this.duplicatesAllowed)
+              .fill(this.gen, this.codes, this.from, this.to);
+    } else {
+      int middle = (this.from + this.to) >>> 1;
+      SplittableRandom leftGen = this.gen.split();
+      invokeAll(new FillTask(this.colors, this.pegs, this.duplicatesAllowed, this.codes, this.from, middle, leftGen),
+              new FillTask(this.colors, this.pegs, this.duplicatesAllowed, this.codes, middle, this.to, this.gen));
+    }
+  }
+}
+
+class ExamplesSequenceGenerator {
+  ILoColor sixColors = MMGame.makePalette(6);
+
+  // does the packed code use each color at most once
+  boolean isDistinct(long code, int pegs) {
+    int seen = 0;
+    for (int peg = 0; peg < pegs; peg++) {
+      int bit = 1 << PackedCode.colorAt(code, pegs, peg);
+      if ((seen & bit) != 0) {
+        return false;
+      }
+      seen |= bit;
+    }
+    return true;
+  }
+
+  boolean testDistinct(Tester tester) {
+    SequenceGenerator gen = new SequenceGenerator(6, 4, false);
+    SplittableRandom rand = new SplittableRandom(7);
+    long[] codes = new long[10000];
+    gen.fill(rand, codes, 0, codes.length);
+    for (long code : codes) {
+      if (!tester.checkExpect(this.isDistinct(code, 4), true)) {
+        return false;
+      }
+    }
+    // a code as long as the palette is a permutation of it
+    return tester.checkExpect(this.isDistinct(PackedCode.pack(
+                    new SequenceGenerator(6, 6, false).next(rand, sixColors), sixColors), 6), true)
+            && tester.checkConstructorException(
+                    new IllegalArgumentException("not enough colors for a code without duplicates"),
+                    "SequenceGenerator", 3, 4, false);
+  }
+
+  boolean testUnbiased(Tester tester) {
+    // every peg takes every color about equally often
+    SequenceGenerator gen = new SequenceGenerator(6, 4, false);
+    int[][] counts = new int[4][6];
+    int[] code = new int[4];
+    SplittableRandom rand = new SplittableRandom(11);
+    for (int i = 0; i < 60000; i++) {
+      gen.next(rand, code);
+      for (int peg = 0; peg < 4; peg++) {
+        counts[peg][code[peg]] += 1;
+      }
+    }
+    for (int[] peg : counts) {
+      for (int count : peg) {
+        if (!tester.checkRange(count, 9501, 10500)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  boolean testSameAsLists(Tester tester) {
+    // with duplicates the draws match the old list recursion peg for peg
+    Random first = new Random(1);
+    Random second = new Random(1);
+    ILoColor drawn = new SequenceGenerator(6, 4, true).next(first, sixColors);
+    ILoColor expected = new MtLoColor();
+    for (int i = 0; i < 4; i++) {
+      expected = new ConsLoColor(sixColors.getIndex(second.nextInt(6)), expected);
+    }
+    return tester.checkExpect(drawn, expected);
+  }
+
+  boolean testBulkFill(Tester tester) {
+    long[] sequential = SequenceGenerator.fill(8, 5, true, 300000, 42, null);
+    long[] parallel = SequenceGenerator.fill(8, 5, true, 300000, 42, SolverPools.withParallelism(4));
+    return tester.checkExpect(parallel, sequential)
+            && tester.checkRange(sequential[123456], 0L, 1L << 20);
+  }
+}
@@ -0,0 +1,481 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// one piece of a sharded search: the secrets left after the opening gets one feedback,
+// named after the opening's index and the feedback's slot
+class SearchUnit {
+  int opening;
+  int slot;
+
+  SearchUnit(int opening, int slot) {
+    this.opening = opening;
+    this.slot = slot;
+  }
+
+  // the unit a file name in the queue stands for
+  static SearchUnit parse(String name) {
+    String[] parts = name.split("[-.]");
+    return new SearchUnit(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+  }
+
+  String name() {
+    return String.format("unit-%08d-%02d", this.opening, this.slot);
+  }
+}
+
+// the search's state as a directory, so it survives any process: units wait in queue/,
+// move to claimed/ under the worker's id while it works on them, leave a file per planned
+// second guess in checkpoints/ and finish as a file in done/. Every step is a rename within
+// the directory, which POSIX makes atomic, so two workers can never claim the same unit and
+// a file is either absent or complete
+class SearchQueue {
+  File directory;
+  File queue;
+  File claimed;
+  File checkpoints;
+  File done;
+
+  // the configuration, from search.conf
+  int colors;
+  int pegs;
+  boolean duplicatesAllowed;
+  int beamWidth;
+  int beamDepth;
+
+  SearchQueue(File directory) throws IOException {
+    this.directory = directory;
+    this.queue = new File(directory, "queue");
+    this.claimed = new File(directory, "claimed");
+    this.checkpoints = new File(directory, "checkpoints");
+    this.done = new File(directory, "done");
+    String[] config = read(new File(directory, "search.conf")).trim().split(" ");
+    this.colors = Integer.parseInt(config[0]);
+    this.pegs = Integer.parseInt(config[1]);
+    this.duplicatesAllowed = Boolean.parseBoolean(config[2]);
+    this.beamWidth = Integer.parseInt(config[3]);
+    this.beamDepth = Integer.parseInt(config[4]);
+  }
+
+  // sets up a search over every opening pattern of the configuration, keeping one already set up
+  static SearchQueue create(File directory, int colors, int pegs, boolean duplicatesAllowed,
+                            int beamWidth, int beamDepth) throws IOException {
+    File config = new File(directory, "search.conf");
+    if (config.exists()) {
+      SearchQueue existing = new SearchQueue(directory);
+      if (existing.colors != colors || existing.pegs != pegs || existing.duplicatesAllowed != duplicatesAllowed
+              || existing.beamWidth != beamWidth || existing.beamDepth != beamDepth) {
+        throw new IllegalArgumentException("directory holds a search of another configuration");
+      }
+      return existing;
+    }
+    for (String part : new String[] {"claimed", "checkpoints", "done"}) {
+      Files.createDirectories(new File(directory, part).toPath());
+    }
+    CodeSpace space = GuessAnalyzer.spaceFor(colors, pegs, duplicatesAllowed);
+    // checks the configuration and beam before anything is queued
+    new StrategyTreeBuilder(space, space, beamWidth, beamDepth);
+    // the queue is built aside and renamed into place whole, so a coordinator that died
+    // part way leaves either no queue or a complete one, and running again carries on
+    File queue = new File(directory, "queue");
+    if (!queue.exists()) {
+      File building = new File(directory, "queue.tmp");
+      deleteTree(building);
+      Files.createDirectories(building.toPath());
+      int winSlot = StrategyTree.slot(PackedCode.feedback(pegs, 0), pegs);
+      for (int opening = 0; opening < space.size(); opening++) {
+        if (!Symmetry.isOpeningPattern(space.code(opening), pegs)) {
+          continue;
+        }
+        boolean[] reached = new boolean[(pegs + 1) * (pegs + 1)];
+        for (int secret = 0; secret < space.size(); secret++) {
+          reached[StrategyTree.slot(space.score(opening, secret), pegs)] = true;
+        }
+        for (int slot = 0; slot < reached.length; slot++) {
+          if (reached[slot] && slot != winSlot) {
+            Files.createFile(new File(building, new SearchUnit(opening, slot).name() + ".todo").toPath());
+          }
+        }
+      }
+      Files.move(building.toPath(), queue.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    // written last, so a directory with a configuration always has its whole queue
+    writeAtomically(config, colors + " " + pegs + " " + duplicatesAllowed + " " + beamWidth + " " + beamDepth + "\n");
+    return new SearchQueue(directory);
+  }
+
+  // deletes a directory of files, if it is there
+  static void deleteTree(File directory) throws IOException {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+      Files.delete(directory.toPath());
+    }
+  }
+
+  // takes the first unit no one has, or returns null when the queue is empty
+  SearchUnit claim(String worker) throws IOException {
+    for (String name : sorted(this.queue)) {
+      String unit = name.substring(0, name.length() - ".todo".length());
+      try {
+        Files.move(new File(this.queue, name).toPath(), new File(this.claimed, unit + "." + worker).toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        return SearchUnit.parse(unit);
+      } catch (NoSuchFileException e) {
+        // another worker got there first
+      }
+    }
+    return null;
+  }
+
+  // records a claimed unit's result, {cost, depth}, and gives up the claim
+  void complete(SearchUnit unit, String worker, long[] result) throws IOException {
+    writeAtomically(new File(this.done, unit.name()), result[0] + " " + result[1] + "\n");
+    Files.deleteIfExists(new File(this.claimed, unit.name() + "." + worker).toPath());
+  }
+
+  // puts every unit claimed by the worker back in the queue, or every claimed unit when the
+  // worker is null; returns how many went back
+  int requeue(String worker) throws IOException {
+    int requeued = 0;
+    for (String name : sorted(this.claimed)) {
+      int dot = name.lastIndexOf('.');
+      if (worker != null && !name.substring(dot + 1).equals(worker)) {
+        continue;
+      }
+      String unit = name.substring(0, dot);
+      Path claim = new File(this.claimed, name).toPath();
+      if (new File(this.done, unit).exists()) {
+        // finished, only the claim was left behind
+        Files.deleteIfExists(claim);
+      } else {
+        Files.move(claim, new File(this.queue, unit + ".todo").toPath(), StandardCopyOption.ATOMIC_MOVE);
+        requeued += 1;
+      }
+    }
+    return requeued;
+  }
+
+  // the second guesses of the unit planned so far, each {guess, cost, depth}
+  List<long[]> checkpoint(SearchUnit unit) throws IOException {
+    List<long[]> planned = new ArrayList<>();
+    File file = new File(this.checkpoints, unit.name());
+    if (file.exists()) {
+      for (String line : read(file).split("\n")) {
+        if (!line.isEmpty()) {
+          planned.add(Arrays.stream(line.split(" ")).mapToLong(Long::parseLong).toArray());
+        }
+      }
+    }
+    return planned;
+  }
+
+  // saves the second guesses of the unit planned so far
+  void saveCheckpoint(SearchUnit unit, List<long[]> planned) throws IOException {
+    StringBuilder lines = new StringBuilder();
+    for (long[] plan : planned) {
+      lines.append(plan[0]).append(' ').append(plan[1]).append(' ').append(plan[2]).append('\n');
+    }
+    writeAtomically(new File(this.checkpoints, unit.name()), lines.toString());
+  }
+
+  // is every unit done
+  boolean isFinished() {
+    return sorted(this.queue).isEmpty() && sorted(this.claimed).isEmpty();
+  }
+
+  // the results of the finished units, each {cost, depth}
+  Map<String, long[]> results() throws IOException {
+    Map<String, long[]> results = new HashMap<>();
+    for (String name : sorted(this.done)) {
+      if (name.startsWith("unit-")) {
+        results.put(name, Arrays.stream(read(new File(this.done, name)).trim().split(" "))
+                .mapToLong(Long::parseLong).toArray());
+      }
+    }
+    return results;
+  }
+
+  // the names in the directory, in order
+  static List<String> sorted(File directory) {
+    String[] names = directory.list();
+    List<String> list = new ArrayList<>(Arrays.asList(names == null ? new String[0] : names));
+    list.removeIf(name -> name.endsWith(".tmp"));
+    list.sort(null);
+    return list;
+  }
+
+  // writes beside the target and renames over it, so readers never see half a file
+  static void writeAtomically(File file, String contents) throws IOException {
+    Path partial = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+    Files.write(partial, contents.getBytes(StandardCharsets.UTF_8));
+    try {
+      Files.move(partial, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      throw new IOException("the search directory must allow atomic renames", e);
+    }
+  }
+
+  static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
+
+// works through a search's queue: for each unit, plans the secrets left after the opening
+// and its feedback, trying the beamWidth best second guesses when the beam reaches that deep,
+// and saves each planned second guess so a crashed unit picks up where it stopped
+class ShardWorker {
+  SearchQueue queue;
+  String id;
+  CodeSpace space;
+  StrategyTreeBuilder builder;
+
+  ShardWorker(SearchQueue queue, String id) {
+    this.queue = queue;
+    this.id = id;
+    this.space = GuessAnalyzer.spaceFor(queue.colors, queue.pegs, queue.duplicatesAllowed);
+    this.builder = new StrategyTreeBuilder(this.space, ScoreTable.bestFor(this.space), queue.beamWidth, queue.beamDepth);
+  }
+
+  // solves units until none are left, returns how many it solved
+  int run() throws IOException {
+    int solved = 0;
+    for (SearchUnit unit = this.queue.claim(this.id); unit != null; unit = this.queue.claim(this.id)) {
+      this.queue.complete(unit, this.id, this.solve(unit));
+      solved += 1;
+    }
+    return solved;
+  }
+
+  // the fewest guesses the unit's secrets take after the opening in total, and the most any takes
+  long[] solve(SearchUnit unit) throws IOException {
+    int[] part = new int[this.space.size()];
+    int count = 0;
+    for (int secret = 0; secret < this.space.size(); secret++) {
+      if (StrategyTree.slot(this.space.score(unit.opening, secret), this.space.pegs) == unit.slot) {
+        part[count] = secret;
+        count += 1;
+      }
+    }
+    part = Arrays.copyOf(part, count);
+    long[] history = new long[StrategyTreeBuilder.MAX_DEPTH];
+    history[0] = this.space.code(unit.opening);
+    Symmetry afterOpening = new Symmetry(this.space.colors, this.space.pegs, history, 1);
+    int width = this.builder.beamDepth > 1 ? this.builder.beamWidth : 1;
+    int[] ranked = part.length <= 2
+            ? new int[] {part[0]}
+            : this.builder.mostParts(part, 1, afterOpening, width);
+
+    List<long[]> planned = this.queue.checkpoint(unit);
+    long[] best = null;
+    for (int guess : ranked) {
+      long[] result = null;
+      for (long[] plan : planned) {
+        result = plan[0] == guess ? plan : result;
+      }
+      if (result == null) {
+        Plan plan = this.builder.planGuess(guess, part, history, 1, afterOpening);
+        history[0] = this.space.code(unit.opening);
+        result = new long[] {guess, plan.cost, plan.depth()};
+        planned.add(result);
+        this.queue.saveCheckpoint(unit, planned);
+      }
+      if (best == null || result[1] < best[1]) {
+        best = result;
+      }
+    }
+    return new long[] {best[1], best[2]};
+  }
+}
+
+// runs a search over every opening and the best second guesses after it on worker processes
+// sharing a SearchQueue directory, restarting any that die, and merges the results into
+// results.txt, best opening first. The directory holds everything, so running the search
+// again on it resumes after a crash instead of starting over
+class ShardedSearch {
+  // rounds of workers to start before deciding they cannot finish
+  static final int MAX_ROUNDS = 3;
+
+  SearchQueue queue;
+
+  ShardedSearch(SearchQueue queue) {
+    this.queue = queue;
+  }
+
+  // runs worker processes until every unit is done, then merges
+  List<String> run(int workers) throws IOException, InterruptedException {
+    // only one coordinator runs on a directory, so claims left from before are from a crash
+    this.queue.requeue(null);
+    for (int round = 0; !this.queue.isFinished(); round++) {
+      if (round == MAX_ROUNDS) {
+        throw new IllegalStateException("workers keep failing, see their output");
+      }
+      List<Process> processes = new ArrayList<>();
+      for (int worker = 0; worker < workers; worker++) {
+        processes.add(this.startWorker("w" + round + "-" + worker));
+      }
+      for (int worker = 0; worker < workers; worker++) {
+        if (processes.get(worker).waitFor() != 0) {
+          this.queue.requeue("w" + round + "-" + worker);
+        }
+      }
+    }
+    return this.merge();
+  }
+
+  // starts a worker on this JVM's class path
+  Process startWorker(String id) throws IOException {
+    String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+    return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "mastermind.ShardedSearch",
+            "worker", this.queue.directory.getPath(), id)
+            .inheritIO()
+            .start();
+  }
+
+  // every opening's average and most guesses, best first: fewest guesses in total, then the
+  // smallest worst case, then the lowest code; also written to results.txt
+  List<String> merge() throws IOException {
+    CodeSpace space = GuessAnalyzer.spaceFor(this.queue.colors, this.queue.pegs, this.queue.duplicatesAllowed);
+    Map<Integer, long[]> openings = new HashMap<>();
+    for (Map.Entry<String, long[]> result : this.queue.results().entrySet()) {
+      SearchUnit unit = SearchUnit.parse(result.getKey());
+      // every secret takes the opening, then the guesses planned after it
+      long[] total = openings.computeIfAbsent(unit.opening, opening -> new long[] {space.size(), 1});
+      total[0] += result.getValue()[0];
+      total[1] = Math.max(total[1], 1 + result.getValue()[1]);
+    }
+    List<Integer> order = new ArrayList<>(openings.keySet());
+    order.sort((a, b) -> openings.get(a)[0] != openings.get(b)[0]
+            ? Long.compare(openings.get(a)[0], openings.get(b)[0])
+            : openings.get(a)[1] != openings.get(b)[1]
+            ? Long.compare(openings.get(a)[1], openings.get(b)[1])
+            : Integer.compare(a, b));
+    List<String> lines = new ArrayList<>();
+    for (int opening : order) {
+      lines.add(String.format("%s %.4f %d", Long.toHexString(space.code(opening)),
+              (double) openings.get(opening)[0] / space.size(), openings.get(opening)[1]));
+    }
+    SearchQueue.writeAtomically(new File(this.queue.directory, "results.txt"), String.join("\n", lines) + "\n");
+    return lines;
+  }
+
+  // coordinates or works on a search:
+  //   directory colors pegs duplicates beamWidth beamDepth workers
+  //   worker directory id
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length == 3 && args[0].equals("worker")) {
+      // a worker outliving its coordinator would hold claims the next run gives away again
+      ProcessHandle.current().parent().ifPresent(coordinator -> coordinator.onExit().thenRun(() -> System.exit(1)));
+      new ShardWorker(new SearchQueue(new File(args[1])), args[2]).run();
+    } else if (args.length == 7) {
+      long start = System.nanoTime();
+      SearchQueue queue = SearchQueue.create(new File(args[0]), Integer.parseInt(args[1]),
+              Integer.parseInt(args[2]), Boolean.parseBoolean(args[3]), Integer.parseInt(args[4]),
+              Integer.parseInt(args[5]));
+      List<String> results = new ShardedSearch(queue).run(Integer.parseInt(args[6]));
+      System.out.printf("best opening, average and most guesses: %s, in %.1f s%n",
+              results.get(0), (System.nanoTime() - start) / 1e9);
+    } else {
+      System.err.println("usage: ShardedSearch directory colors pegs duplicates beamWidth beamDepth workers");
+      System.err.println("       ShardedSearch worker directory id");
+      System.exit(2);
+    }
+  }
+}
+
+class ExamplesShardedSearch {
+  // a fresh search directory
+  SearchQueue freshQueue(int beamWidth, int beamDepth) throws IOException {
+    File directory = Files.createTempDirectory("mmsearch").toFile();
+    return SearchQueue.create(directory, 4, 3, true, beamWidth, beamDepth);
+  }
+
+  boolean testQueue(Tester tester) throws IOException {
+    SearchQueue queue = this.freshQueue(1, 0);
+    int units = SearchQueue.sorted(queue.queue).size();
+    SearchUnit first = queue.claim("a");
+    SearchUnit second = queue.claim("b");
+    int requeued = queue.requeue("a");
+    SearchUnit again = queue.claim("c");
+    return tester.checkExpect(units > 0, true)
+            && tester.checkExpect(first.name().equals(second.name()), false)
+            && tester.checkExpect(requeued, 1)
+            && tester.checkExpect(again.name(), first.name())
+            && tester.checkExpect(SearchQueue.sorted(queue.claimed).size(), 2)
+            && tester.checkExpect(queue.isFinished(), false)
+            && tester.checkException(new IllegalArgumentException("directory holds a search of another configuration"),
+            new ExamplesShardedSearch(), "createOther", queue.directory);
+  }
+
+  boolean testCreateAfterCrash(Tester tester) throws IOException {
+    // a coordinator that died while queueing left a part built queue, and running again
+    // starts the queue over and finishes setting up
+    File directory = Files.createTempDirectory("mmsearch").toFile();
+    File building = new File(directory, "queue.tmp");
+    Files.createDirectories(building.toPath());
+    Files.createFile(new File(building, new SearchUnit(0, 0).name() + ".todo").toPath());
+    SearchQueue resumed = SearchQueue.create(directory, 4, 3, true, 1, 0);
+    return tester.checkExpect(SearchQueue.sorted(resumed.queue), SearchQueue.sorted(this.freshQueue(1, 0).queue))
+            && tester.checkExpect(building.exists(), false)
+            && tester.checkExpect(new File(directory, "search.conf").exists(), true);
+  }
+
+  // a search of another configuration in the given directory
+  SearchQueue createOther(File directory) throws IOException {
+    return SearchQueue.create(directory, 5, 3, true, 1, 0);
+  }
+
+  boolean testMerge(Tester tester) throws IOException {
+    // with a greedy search the opening the greedy tree uses scores the same as the tree
+    SearchQueue queue = this.freshQueue(1, 0);
+    new ShardWorker(queue, "a").run();
+    List<String> lines = new ShardedSearch(queue).merge();
+    CodeSpace space = GuessAnalyzer.spaceFor(4, 3, true);
+    StrategyTree tree = new StrategyTreeBuilder(space).build();
+    String treeOpening = Long.toHexString(space.code(tree.guesses[0]));
+    String treeLine = null;
+    for (String line : lines) {
+      treeLine = line.startsWith(treeOpening + " ") ? line : treeLine;
+    }
+    return tester.checkExpect(queue.isFinished(), true)
+            && tester.checkExpect(treeLine, String.format("%s %.4f %d", treeOpening, tree.averageGuesses(), tree.maxGuesses()))
+            && tester.checkExpect(Double.parseDouble(lines.get(0).split(" ")[1]) <= tree.averageGuesses(), true)
+            && tester.checkExpect(new File(queue.directory, "results.txt").exists(), true);
+  }
+
+  boolean testResume(Tester tester) throws IOException, InterruptedException {
+    // a worker that died holding a unit it had checkpointed leaves the same results once
+    // the search is run again on worker processes
+    SearchQueue clean = this.freshQueue(2, 2);
+    new ShardWorker(clean, "a").run();
+    List<String> expected = new ShardedSearch(clean).merge();
+
+    SearchQueue crashed = this.freshQueue(2, 2);
+    SearchUnit lost = crashed.claim("dead");
+    ShardWorker worker = new ShardWorker(crashed, "dead");
+    long[] solved = worker.solve(lost);
+    List<long[]> planned = crashed.checkpoint(lost);
+    boolean checkpointed = !planned.isEmpty();
+    List<String> resumed = new ShardedSearch(crashed).run(2);
+    return tester.checkExpect(checkpointed, true)
+            && tester.checkExpect(worker.solve(lost), solved)
+            && tester.checkExpect(resumed, expected)
+            && tester.checkExpect(SearchQueue.sorted(crashed.claimed).isEmpty(), true);
+  }
+}
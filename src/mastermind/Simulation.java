@@ -0,0 +1,262 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// picks the next guess of a game from its history
+interface IGuessStrategy {
+  // the guess to play given the game's past guesses
+  ILoColor nextGuess(MMGame game);
+}
+
+// always guesses the first code still consistent with the feedback
+class FirstCandidateSolver extends KnuthSolver {
+  FirstCandidateSolver(CodeSpace space, IScorer scorer) {
+    super(space, scorer);
+  }
+
+  int nextGuess() {
+    if (this.candidateCount == 0) {
+      throw new IllegalStateException("no code is consistent with the feedback");
+    }
+    return this.candidates[0];
+  }
+}
+
+// plays many games of one configuration without a window, each worker with its own
+// random number generator reseeded per game, so every game's secret depends only on
+// the seed and the game's number and results do not depend on the worker count
+class Simulation {
+  // games are handed to workers this many at a time
+  static final int BATCH = 64;
+
+  boolean duplicatesAllowed;
+  int sequenceLen;
+  int maxGuesses;
+  ILoColor possibleColors;
+
+  // where finished games are recorded, or null when they are not
+  GameLogWriter log;
+
+  Simulation(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors) {
+    MMGame.validateParams(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors);
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.sequenceLen = sequenceLen;
+    this.maxGuesses = maxGuesses;
+    this.possibleColors = possibleColors;
+  }
+
+  // guesses with the strategy until the game is won or out of guesses
+  static MMGame play(MMGame game, IGuessStrategy strategy) {
+    return play(game, strategy, null);
+  }
+
+  // plays the game, noting when each guess was made if guessMillis is not null
+  static MMGame play(MMGame game, IGuessStrategy strategy, long[] guessMillis) {
+    MMGame state = game;
+    while (!state.isOver()) {
+      state = state.replaceCurrentAndPlace(strategy.nextGuess(state), state.past).processGuess();
+      if (guessMillis != null) {
+        guessMillis[state.past.length() - 1] = System.currentTimeMillis();
+      }
+    }
+    return state;
+  }
+
+  // records every finished game to the log
+  Simulation logTo(GameLogWriter writer) {
+    this.log = writer;
+    return this;
+  }
+
+  // the seed of the given game, spread so neighbouring games look unrelated
+  static long gameSeed(long seed, long game) {
+    long z = seed + (game + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // plays the games on a pool of workers, with a fresh strategy for every game
+  SimulationReport run(long games, long seed, int workers, Supplier<IGuessStrategy> strategies) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("must have at least one worker");
+    }
+    AtomicLong nextGame = new AtomicLong();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    long start = System.nanoTime();
+    try {
+      List<Future<SimulationReport>> parts = new ArrayList<>();
+      for (int worker = 0; worker < workers; worker++) {
+        parts.add(pool.submit(() -> this.runWorker(nextGame, games, seed, strategies)));
+      }
+      SimulationReport total = new SimulationReport(this.maxGuesses);
+      for (Future<SimulationReport> part : parts) {
+        total.add(part.get());
+      }
+      total.elapsedNanos = System.nanoTime() - start;
+      return total;
+    } catch (Exception e) {
+      throw new IllegalStateException("simulation failed", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // plays batches of games until none are left, counting into its own report
+  SimulationReport runWorker(AtomicLong nextGame, long games, long seed, Supplier<IGuessStrategy> strategies) {
+    SimulationReport report = new SimulationReport(this.maxGuesses);
+    Random rand = new Random();
+    long[] guessMillis = this.log == null ? null : new long[this.maxGuesses];
+    long first = nextGame.getAndAdd(BATCH);
+    while (first < games) {
+      long last = Math.min(games, first + BATCH);
+      for (long game = first; game < last; game++) {
+        rand.setSeed(gameSeed(seed, game));
+        MMGame start = new MMGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses,
+                this.possibleColors, new MtLoColor(), new MtLoGuess(), rand);
+        long startMillis = System.currentTimeMillis();
+        MMGame finished = play(start, strategies.get(), guessMillis);
+        report.record(finished);
+        if (this.log != null) {
+          this.recordToLog(finished, startMillis, guessMillis);
+        }
+      }
+      first = nextGame.getAndAdd(BATCH);
+    }
+    return report;
+  }
+
+  // writes a finished game to the log
+  void recordToLog(MMGame finished, long startMillis, long[] guessMillis) {
+    try {
+      this.log.record(finished, startMillis, guessMillis);
+    } catch (IOException e) {
+      throw new IllegalStateException("could not log game", e);
+    }
+  }
+
+  // runs a Knuth simulation from the command line:
+  //   colors pegs duplicates games workers seed
+  public static void main(String[] args) {
+    int colors = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+    int pegs = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    boolean duplicates = args.length <= 2 || Boolean.parseBoolean(args[2]);
+    long games = args.length > 3 ? Long.parseLong(args[3]) : 10000;
+    int workers = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+    CodeSpace space = new CodeSpace(colors, pegs, duplicates);
+    IScorer scorer = ScoreTable.bestFor(space);
+    Simulation simulation = new Simulation(duplicates, pegs, 20, MMGame.makePalette(colors));
+    System.out.println(simulation.run(games, seed, workers, () -> new KnuthSolver(space, scorer)));
+  }
+}
+
+// how many guesses the games of a simulation took
+class SimulationReport {
+  long games;
+  long lost;
+  // guessCounts[n] is how many games were won on the nth guess
+  long[] guessCounts;
+  long elapsedNanos;
+
+  SimulationReport(int maxGuesses) {
+    this.guessCounts = new long[maxGuesses + 1];
+  }
+
+  // counts a finished game
+  void record(MMGame game) {
+    this.recordResult(game.isWon(), game.past.length());
+  }
+
+  // counts a game that was won or lost after the given guesses
+  void recordResult(boolean won, int guesses) {
+    this.games += 1;
+    if (won) {
+      if (guesses >= this.guessCounts.length) {
+        this.guessCounts = Arrays.copyOf(this.guessCounts, guesses + 1);
+      }
+      this.guessCounts[guesses] += 1;
+    } else {
+      this.lost += 1;
+    }
+  }
+
+  // adds another report's games into this one
+  void add(SimulationReport other) {
+    this.games += other.games;
+    this.lost += other.lost;
+    if (other.guessCounts.length > this.guessCounts.length) {
+      this.guessCounts = Arrays.copyOf(this.guessCounts, other.guessCounts.length);
+    }
+    for (int guesses = 0; guesses < other.guessCounts.length; guesses++) {
+      this.guessCounts[guesses] += other.guessCounts[guesses];
+    }
+  }
+
+  // the average guesses of the games that were won
+  double meanGuesses() {
+    long won = this.games - this.lost;
+    long total = 0;
+    for (int guesses = 0; guesses < this.guessCounts.length; guesses++) {
+      total += guesses * this.guessCounts[guesses];
+    }
+    return won == 0 ? 0 : (double) total / won;
+  }
+
+  // games finished per second
+  double gamesPerSecond() {
+    return this.elapsedNanos == 0 ? 0 : this.games * 1e9 / this.elapsedNanos;
+  }
+
+  public String toString() {
+    StringBuilder text = new StringBuilder();
+    text.append(String.format("games %d, lost %d, mean %.4f guesses, %.0f games/s%n",
+            this.games, this.lost, this.meanGuesses(), this.gamesPerSecond()));
+    for (int guesses = 1; guesses < this.guessCounts.length; guesses++) {
+      if (this.guessCounts[guesses] > 0) {
+        text.append(String.format("  %2d guesses: %d%n", guesses, this.guessCounts[guesses]));
+      }
+    }
+    return text.toString();
+  }
+}
+
+class ExamplesSimulation {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+  IScorer classicTable = new ScoreTable(classic);
+  Simulation sixByFour = new Simulation(true, 4, 10, MMGame.makePalette(6));
+
+  boolean testKnuthNeverNeedsSix(Tester tester) {
+    SimulationReport report = sixByFour.run(300, 5, 2, () -> new KnuthSolver(classic, classicTable));
+    return tester.checkExpect(report.games, 300L)
+            && tester.checkExpect(report.lost, 0L)
+            && tester.checkExpect(report.guessCounts[6], 0L)
+            && tester.checkRange(report.meanGuesses(), 4.0, 5.0);
+  }
+
+  boolean testWorkerCountDoesNotMatter(Tester tester) {
+    SimulationReport one = sixByFour.run(200, 9, 1, () -> new FirstCandidateSolver(classic, classicTable));
+    SimulationReport three = sixByFour.run(200, 9, 3, () -> new FirstCandidateSolver(classic, classicTable));
+    return tester.checkExpect(one.guessCounts, three.guessCounts)
+            && tester.checkExpect(one.lost, three.lost);
+  }
+
+  boolean testPalette(Tester tester) {
+    return tester.checkExpect(MMGame.makePalette(3),
+            new ConsLoColor(Color.BLUE, new ConsLoColor(Color.GREEN, new ConsLoColor(Color.RED, new MtLoColor()))))
+            && tester.checkExpect(MMGame.makePalette(20).length(), 20);
+  }
+}
@@ -0,0 +1,780 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+// a whole strategy for a configuration, decided ahead of time: node 0 is the opening and
+// every node holds its guess and a bit per feedback it can get, slot exact * (pegs + 1) +
+// outOfPlace; the children of a node are stored together in slot order, breadth first, so
+// the child for a feedback is found by counting the lower bits and a lookup never searches
+class StrategyTree {
+  static final int MAGIC = 0x4D4D5354;  // "MMST"
+  static final int VERSION = 1;
+  // the feedback slots of a node must fit in its long
+  static final int MAX_PEGS = 7;
+
+  CodeSpace space;
+  int[] guesses;
+  long[] feedbackMasks;
+  // derived from the masks, the node of each node's lowest feedback
+  int[] firstChildren;
+
+  StrategyTree(CodeSpace space, int[] guesses, long[] feedbackMasks) {
+    this.space = space;
+    this.guesses = guesses;
+    this.feedbackMasks = feedbackMasks;
+    this.firstChildren = new int[guesses.length];
+    int next = 1;
+    for (int node = 0; node < guesses.length; node++) {
+      this.firstChildren[node] = next;
+      // the winning feedback ends the game and has no child
+      next += Long.bitCount(feedbackMasks[node] & ~this.winMask());
+    }
+  }
+
+  // the slot of a feedback
+  static int slot(int feedback, int pegs) {
+    return PackedCode.exact(feedback) * (pegs + 1) + PackedCode.outOfPlace(feedback);
+  }
+
+  // the bit of the winning feedback, the highest slot
+  long winMask() {
+    return 1L << slot(PackedCode.feedback(this.space.pegs, 0), this.space.pegs);
+  }
+
+  // the number of nodes
+  int size() {
+    return this.guesses.length;
+  }
+
+  // the node reached from the given node by the feedback, or -1 when the strategy never gets it
+  int child(int node, int feedback) {
+    long bit = 1L << slot(feedback, this.space.pegs);
+    if ((this.feedbackMasks[node] & bit & ~this.winMask()) == 0) {
+      return -1;
+    }
+    return this.firstChildren[node] + Long.bitCount(this.feedbackMasks[node] & (bit - 1));
+  }
+
+  // the node the packed guesses and their feedback lead to, or -1 once they leave the tree
+  int follow(long[] guesses, int[] feedbacks, int count) {
+    int node = 0;
+    for (int i = 0; i < count && node != -1; i++) {
+      if (this.space.code(this.guesses[node]) != guesses[i]) {
+        return -1;
+      }
+      node = this.child(node, feedbacks[i]);
+    }
+    return node;
+  }
+
+  // the node the game's history leads to, or -1 once it leaves the tree
+  int follow(ILoGuess past, ILoColor palette) {
+    int count = past.length();
+    long[] guesses = new long[count];
+    int[] feedbacks = new int[count];
+    for (int i = 0; i < count; i++) {
+      Guess guess = past.getIndex(i);
+      guesses[i] = PackedCode.pack(guess.sequence, palette);
+      feedbacks[i] = PackedCode.feedback(guess.correct, guess.outOfPlace);
+    }
+    return this.follow(guesses, feedbacks, count);
+  }
+
+  // the average number of guesses over every secret, each solved at the one node guessing it
+  double averageGuesses() {
+    long total = 0;
+    int[] depths = new int[this.guesses.length];
+    depths[0] = 1;
+    for (int node = 0; node < this.guesses.length; node++) {
+      if ((this.feedbackMasks[node] & this.winMask()) != 0) {
+        total += depths[node];
+      }
+      int children = Long.bitCount(this.feedbackMasks[node] & ~this.winMask());
+      for (int child = 0; child < children; child++) {
+        depths[this.firstChildren[node] + child] = depths[node] + 1;
+      }
+    }
+    return (double) total / this.space.size();
+  }
+
+  // the most guesses any secret takes
+  int maxGuesses() {
+    int[] depths = new int[this.guesses.length];
+    depths[0] = 1;
+    int max = 1;
+    for (int node = 0; node < this.guesses.length; node++) {
+      max = Math.max(max, depths[node]);
+      int children = Long.bitCount(this.feedbackMasks[node] & ~this.winMask());
+      for (int child = 0; child < children; child++) {
+        depths[this.firstChildren[node] + child] = depths[node] + 1;
+      }
+    }
+    return max;
+  }
+
+  // writes the configuration, then a guess and a feedback mask per node
+  void write(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeByte(this.space.colors);
+      out.writeByte(this.space.pegs);
+      out.writeBoolean(this.space.duplicatesAllowed);
+      out.writeInt(this.guesses.length);
+      for (int node = 0; node < this.guesses.length; node++) {
+        out.writeInt(this.guesses[node]);
+        out.writeLong(this.feedbackMasks[node]);
+      }
+    }
+  }
+
+  // reads a tree written by write
+  static StrategyTree read(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("not a strategy tree: " + file);
+      }
+      CodeSpace space = new CodeSpace(in.readByte(), in.readByte(), in.readBoolean());
+      int nodes = in.readInt();
+      int[] guesses = new int[nodes];
+      long[] feedbackMasks = new long[nodes];
+      for (int node = 0; node < nodes; node++) {
+        guesses[node] = in.readInt();
+        feedbackMasks[node] = in.readLong();
+      }
+      return new StrategyTree(space, guesses, feedbackMasks);
+    }
+  }
+}
+
+// a decision while building a tree: the guess, the plans after each feedback by slot,
+// and how many guesses the secrets of this node take from here on
+class Plan {
+  int guess;
+  boolean wins;
+  Plan[] children;
+  long cost;
+
+  Plan(int guess, boolean wins, Plan[] children, long cost) {
+    this.guess = guess;
+    this.wins = wins;
+    this.children = children;
+    this.cost = cost;
+  }
+
+  // the most guesses any secret takes from here, counting this one
+  int depth() {
+    int depth = 1;
+    for (Plan child : this.children) {
+      if (child != null) {
+        depth = Math.max(depth, 1 + child.depth());
+      }
+    }
+    return depth;
+  }
+}
+
+// builds a strategy tree guessing the code that splits the consistent codes into the most
+// parts; at the first beamDepth levels the beamWidth best such guesses are each planned out
+// in full and the one needing the fewest guesses in total is kept
+class StrategyTreeBuilder {
+  // no sensible strategy needs more guesses than this
+  static final int MAX_DEPTH = 32;
+
+  CodeSpace space;
+  IScorer scorer;
+  int beamWidth;
+  int beamDepth;
+  int slots;
+
+  StrategyTreeBuilder(CodeSpace space, IScorer scorer, int beamWidth, int beamDepth) {
+    if (space.pegs > StrategyTree.MAX_PEGS) {
+      throw new IllegalArgumentException("configuration is too wide for a strategy tree");
+    } else if (beamWidth < 1) {
+      throw new IllegalArgumentException("beam width must be at least one");
+    }
+    this.space = space;
+    this.scorer = scorer;
+    this.beamWidth = beamWidth;
+    this.beamDepth = beamDepth;
+    this.slots = (space.pegs + 1) * (space.pegs + 1);
+  }
+
+  StrategyTreeBuilder(CodeSpace space) {
+    this(space, ScoreTable.bestFor(space), 1, 0);
+  }
+
+  // plans every secret and lays the plans out breadth first
+  StrategyTree build() {
+    int[] all = new int[this.space.size()];
+    for (int code = 0; code < all.length; code++) {
+      all[code] = code;
+    }
+    return this.layOut(this.plan(all, new long[MAX_DEPTH], 0, null));
+  }
+
+  // the optimal tree when the search finishes within the time, else the one build plans
+  StrategyTree buildOptimal(long millis) {
+    Plan root = new OptimalTreeSearch(this.space, this.scorer, millis).run();
+    return root == null ? this.build() : this.layOut(root);
+  }
+
+  // the tree of the plans, breadth first
+  StrategyTree layOut(Plan root) {
+    List<Plan> order = new ArrayList<>();
+    ArrayDeque<Plan> queue = new ArrayDeque<>();
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      Plan plan = queue.poll();
+      order.add(plan);
+      for (Plan child : plan.children) {
+        if (child != null) {
+          queue.add(child);
+        }
+      }
+    }
+    int[] guesses = new int[order.size()];
+    long[] feedbackMasks = new long[order.size()];
+    long win = 1L << StrategyTree.slot(PackedCode.feedback(this.space.pegs, 0), this.space.pegs);
+    for (int node = 0; node < guesses.length; node++) {
+      Plan plan = order.get(node);
+      guesses[node] = plan.guess;
+      for (int slot = 0; slot < this.slots; slot++) {
+        if (plan.children[slot] != null) {
+          feedbackMasks[node] |= 1L << slot;
+        }
+      }
+      if (plan.wins) {
+        feedbackMasks[node] |= win;
+      }
+    }
+    return new StrategyTree(this.space, guesses, feedbackMasks);
+  }
+
+  // the best plan for the candidates after depth guesses
+  Plan plan(int[] candidates, long[] history, int depth, Symmetry symmetry) {
+    if (depth == history.length) {
+      throw new IllegalStateException("strategy needs more guesses than planned for");
+    }
+    int width = depth < this.beamDepth ? this.beamWidth : 1;
+    int[] ranked = candidates.length <= 2
+            ? new int[] {candidates[0]}
+            : this.mostParts(candidates, depth, symmetry, width);
+    Plan best = null;
+    for (int guess : ranked) {
+      Plan plan = this.planGuess(guess, candidates, history, depth, symmetry);
+      if (best == null || plan.cost < best.cost) {
+        best = plan;
+      }
+    }
+    return best;
+  }
+
+  // the plan making this guess next
+  Plan planGuess(int guess, int[] candidates, long[] history, int depth, Symmetry symmetry) {
+    int[][] parts = split(this.scorer, this.space.pegs, this.slots, guess, candidates);
+    history[depth] = this.space.code(guess);
+    Symmetry after = symmetry == null
+            ? new Symmetry(this.space.colors, this.space.pegs, history, depth + 1)
+            : symmetry.extendedBy(history, depth + 1);
+    int winSlot = StrategyTree.slot(PackedCode.feedback(this.space.pegs, 0), this.space.pegs);
+    Plan[] children = new Plan[this.slots];
+    long cost = candidates.length;
+    for (int slot = 0; slot < this.slots; slot++) {
+      if (slot != winSlot && parts[slot].length > 0) {
+        children[slot] = this.plan(parts[slot], history, depth + 1, after);
+        history[depth] = this.space.code(guess);
+        cost += children[slot].cost;
+      }
+    }
+    return new Plan(guess, parts[winSlot].length > 0, children, cost);
+  }
+
+  // the candidates each feedback to the guess would leave, by slot and still ascending
+  static int[][] split(IScorer scorer, int pegs, int slots, int guess, int[] candidates) {
+    int[][] parts = new int[slots][];
+    int[] sizes = new int[parts.length];
+    int[] feedbacks = new int[candidates.length];
+    for (int i = 0; i < candidates.length; i++) {
+      feedbacks[i] = StrategyTree.slot(scorer.score(guess, candidates[i]), pegs);
+      sizes[feedbacks[i]] += 1;
+    }
+    for (int slot = 0; slot < parts.length; slot++) {
+      parts[slot] = new int[sizes[slot]];
+      sizes[slot] = 0;
+    }
+    for (int i = 0; i < candidates.length; i++) {
+      parts[feedbacks[i]][sizes[feedbacks[i]]] = candidates[i];
+      sizes[feedbacks[i]] += 1;
+    }
+    return parts;
+  }
+
+  // up to width guesses splitting the candidates into the most parts, candidates first on ties
+  int[] mostParts(int[] candidates, int depth, Symmetry symmetry, int width) {
+    int[] best = new int[width];
+    int[] bestParts = new int[width];
+    boolean[] bestIsCandidate = new boolean[width];
+    int found = 0;
+    int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+
+    // candidates come first, so a candidate that splits them all up ends the search at once
+    int[] order = new int[candidates.length + this.space.size()];
+    System.arraycopy(candidates, 0, order, 0, candidates.length);
+    for (int code = 0; code < this.space.size(); code++) {
+      order[candidates.length + code] = code;
+    }
+    for (int i = 0; i < order.length; i++) {
+      int guess = order[i];
+      boolean isCandidate = i < candidates.length;
+      long code = this.space.code(guess);
+      if (!isCandidate && Arrays.binarySearch(candidates, guess) >= 0) {
+        continue;
+      }
+      boolean worthScoring = depth == 0
+              ? Symmetry.isOpeningPattern(code, this.space.pegs)
+              : symmetry.isRepresentative(code);
+      if (!worthScoring) {
+        continue;
+      }
+      Arrays.fill(histogram, 0);
+      this.scorer.partition(guess, candidates, 0, candidates.length, histogram, Integer.MAX_VALUE);
+      int parts = 0;
+      for (int size : histogram) {
+        parts += size > 0 ? 1 : 0;
+      }
+      // insert, keeping the list ordered by parts, then candidates, then the order scored
+      int at = found;
+      while (at > 0 && (parts > bestParts[at - 1] || parts == bestParts[at - 1] && isCandidate && !bestIsCandidate[at - 1])) {
+        at -= 1;
+      }
+      if (at < width) {
+        int last = Math.min(found, width - 1);
+        for (int j = last; j > at; j--) {
+          best[j] = best[j - 1];
+          bestParts[j] = bestParts[j - 1];
+          bestIsCandidate[j] = bestIsCandidate[j - 1];
+        }
+        best[at] = guess;
+        bestParts[at] = parts;
+        bestIsCandidate[at] = isCandidate;
+        found = Math.min(found + 1, width);
+      }
+      if (width == 1 && isCandidate && parts == candidates.length) {
+        break;
+      }
+    }
+    return Arrays.copyOf(best, found);
+  }
+}
+
+// finds the plan needing the fewest guesses in total, so the fewest on average, by branch
+// and bound: a guess's cost is at least its node's codes plus the least any tree could spend
+// on each part, guesses are tried cheapest bound first, only one of each set of guesses the
+// history's symmetries make interchangeable, and a part is searched only while it can still
+// beat the best found. Sets already solved, or proved to cost at least some bound, are
+// remembered. 6x4 takes well under a minute and reaches 4.3403 guesses on average; larger
+// spaces take far longer, so the search gives up once its time is up
+class OptimalTreeSearch {
+  CodeSpace space;
+  IScorer scorer;
+  long millis;
+  long deadline;
+  int slots;
+  int winSlot;
+  // the feedbacks a guess can get other than the win, each a possible part
+  int branching;
+
+  // the optimal plans of sets searched in full, and the least cost proved for the others
+  Map<CodeSet, Plan> solved = new HashMap<>();
+  Map<CodeSet, Long> atLeast = new HashMap<>();
+
+  OptimalTreeSearch(CodeSpace space, IScorer scorer, long millis) {
+    if (space.pegs > StrategyTree.MAX_PEGS) {
+      throw new IllegalArgumentException("configuration is too wide for a strategy tree");
+    }
+    this.space = space;
+    this.scorer = scorer;
+    this.millis = millis;
+    this.slots = (space.pegs + 1) * (space.pegs + 1);
+    this.winSlot = StrategyTree.slot(PackedCode.feedback(space.pegs, 0), space.pegs);
+    // exact + outOfPlace never passes pegs, and pegs - 1 exact with one out of place cannot happen
+    this.branching = (space.pegs + 1) * (space.pegs + 2) / 2 - 2;
+  }
+
+  // the optimal plan for every code, or null when the time ran out
+  Plan run() {
+    this.deadline = System.nanoTime() + this.millis * 1_000_000;
+    int[] all = new int[this.space.size()];
+    for (int code = 0; code < all.length; code++) {
+      all[code] = code;
+    }
+    try {
+      return this.solve(all, new long[StrategyTreeBuilder.MAX_DEPTH], 0, null, Long.MAX_VALUE);
+    } catch (IllegalStateException e) {
+      return null;
+    }
+  }
+
+  // the least total any plan could spend on n codes: one guess solves at most one code, and
+  // each node has at most branching children, so at best the codes fill the levels in turn
+  long lowerBound(int n) {
+    long cost = 0;
+    long level = 1;
+    long width = 1;
+    int left = n;
+    while (left > 0) {
+      long here = Math.min(left, width);
+      cost += here * level;
+      left -= (int) here;
+      level += 1;
+      width = Math.min(width * this.branching, Integer.MAX_VALUE);
+    }
+    return cost;
+  }
+
+  // the optimal plan for the candidates after depth guesses if it costs under the bound, else null
+  Plan solve(int[] candidates, long[] history, int depth, Symmetry symmetry, long bound) {
+    int n = candidates.length;
+    if (n == 1) {
+      return bound > 1 ? new Plan(candidates[0], true, new Plan[this.slots], 1) : null;
+    }
+    if (this.lowerBound(n) >= bound) {
+      return null;
+    }
+    CodeSet key = new CodeSet(candidates);
+    Plan known = this.solved.get(key);
+    if (known != null) {
+      return known.cost < bound ? known : null;
+    }
+    Long proved = this.atLeast.get(key);
+    if (proved != null && proved >= bound) {
+      return null;
+    }
+    if (depth == history.length) {
+      throw new IllegalStateException("strategy needs more guesses than planned for");
+    }
+    if (System.nanoTime() >= this.deadline) {
+      throw new IllegalStateException("search ran out of time");
+    }
+
+    // every guess worth trying, with the bound on its cost
+    int[] guesses = new int[this.space.size()];
+    long[] bounds = new long[this.space.size()];
+    int count = 0;
+    int[] histogram = new int[PackedCode.FEEDBACK_SIZE];
+    for (int guess = 0; guess < this.space.size(); guess++) {
+      long code = this.space.code(guess);
+      boolean worthScoring = depth == 0
+              ? Symmetry.isOpeningPattern(code, this.space.pegs)
+              : symmetry.isRepresentative(code);
+      if (!worthScoring) {
+        continue;
+      }
+      Arrays.fill(histogram, 0);
+      int largest = this.scorer.partition(guess, candidates, 0, n, histogram, Integer.MAX_VALUE);
+      boolean isCandidate = Arrays.binarySearch(candidates, guess) >= 0;
+      if (largest == n && !isCandidate) {
+        // learns nothing
+        continue;
+      }
+      long cost = n;
+      for (int feedback = 0; feedback < histogram.length; feedback++) {
+        if (histogram[feedback] > 0 && PackedCode.exact(feedback) != this.space.pegs) {
+          cost += this.lowerBound(histogram[feedback]);
+        }
+      }
+      guesses[count] = guess;
+      // candidates first among equal bounds, then the order of the space
+      bounds[count] = cost * 2 + (isCandidate ? 0 : 1);
+      count += 1;
+    }
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (x, y) -> Long.compare(bounds[x], bounds[y]));
+
+    Plan best = null;
+    for (int i = 0; i < count && bounds[order[i]] / 2 < bound; i++) {
+      Plan plan = this.planGuess(guesses[order[i]], candidates, history, depth, symmetry, bound);
+      if (plan != null) {
+        best = plan;
+        bound = plan.cost;
+      }
+    }
+    if (best != null) {
+      this.solved.put(key, best);
+    } else {
+      this.atLeast.put(key, proved == null ? bound : Math.max(proved, bound));
+    }
+    return best;
+  }
+
+  // the best plan making this guess next if it costs under the bound, else null
+  Plan planGuess(int guess, int[] candidates, long[] history, int depth, Symmetry symmetry, long bound) {
+    int[][] parts = StrategyTreeBuilder.split(this.scorer, this.space.pegs, this.slots, guess, candidates);
+    history[depth] = this.space.code(guess);
+    Symmetry after = symmetry == null
+            ? new Symmetry(this.space.colors, this.space.pegs, history, depth + 1)
+            : symmetry.extendedBy(history, depth + 1);
+
+    // the largest parts first, as they are the likeliest to go over the bound
+    Integer[] order = new Integer[this.slots];
+    long cost = candidates.length;
+    for (int slot = 0; slot < this.slots; slot++) {
+      order[slot] = slot;
+      if (slot != this.winSlot) {
+        cost += this.lowerBound(parts[slot].length);
+      }
+    }
+    Arrays.sort(order, (x, y) -> parts[y].length - parts[x].length);
+    Plan[] children = new Plan[this.slots];
+    for (int slot : order) {
+      if (slot == this.winSlot || parts[slot].length == 0) {
+        continue;
+      }
+      long partBound = this.lowerBound(parts[slot].length);
+      // what this part may spend and still leave the total under the bound
+      Plan child = this.solve(parts[slot], history, depth + 1, after, bound - cost + partBound);
+      history[depth] = this.space.code(guess);
+      if (child == null) {
+        return null;
+      }
+      children[slot] = child;
+      cost += child.cost - partBound;
+    }
+    return new Plan(guess, parts[this.winSlot].length > 0, children, cost);
+  }
+}
+
+// a sorted set of code indexes, compared by value, as a map key
+class CodeSet {
+  int[] codes;
+  int hash;
+
+  CodeSet(int[] codes) {
+    this.codes = codes;
+    this.hash = Arrays.hashCode(codes);
+  }
+
+  public boolean equals(Object other) {
+    return other instanceof CodeSet && Arrays.equals(this.codes, ((CodeSet) other).codes);
+  }
+
+  public int hashCode() {
+    return this.hash;
+  }
+}
+
+// builds a tree offline: colors pegs duplicates [beamWidth beamDepth] file; without a beam
+// the tree is the optimal one if the search finishes within OPTIMAL_MILLIS, else the greedy one
+class BuildStrategyTree {
+  static final long OPTIMAL_MILLIS = 10 * 60 * 1000;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4 && args.length != 6) {
+      System.err.println("usage: BuildStrategyTree colors pegs duplicates [beamWidth beamDepth] file");
+      System.exit(2);
+    }
+    CodeSpace space = new CodeSpace(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+            Boolean.parseBoolean(args[2]));
+    int beamWidth = args.length == 6 ? Integer.parseInt(args[3]) : 1;
+    int beamDepth = args.length == 6 ? Integer.parseInt(args[4]) : 0;
+    long start = System.nanoTime();
+    IScorer scorer = ScoreTable.bestFor(space);
+    StrategyTreeBuilder builder = new StrategyTreeBuilder(space, scorer, beamWidth, beamDepth);
+    Plan optimal = args.length == 4 ? new OptimalTreeSearch(space, scorer, OPTIMAL_MILLIS).run() : null;
+    StrategyTree tree = optimal == null ? builder.build() : builder.layOut(optimal);
+    File file = new File(args[args.length - 1]);
+    tree.write(file);
+    System.out.printf("%s: %d nodes, %.4f guesses on average, at most %d, built in %.1f s, %d bytes%n",
+            optimal == null ? "heuristic" : "optimal", tree.size(), tree.averageGuesses(), tree.maxGuesses(),
+            (System.nanoTime() - start) / 1e9, file.length());
+  }
+}
+
+// plays by a strategy tree, handing over to another strategy once the game leaves the tree
+class TreeStrategy implements IGuessStrategy {
+  StrategyTree tree;
+  IGuessStrategy fallback;
+
+  TreeStrategy(StrategyTree tree, IGuessStrategy fallback) {
+    this.tree = tree;
+    this.fallback = fallback;
+  }
+
+  // the tree's guess for the game's history
+  public ILoColor nextGuess(MMGame game) {
+    int node = this.tree.follow(game.past, game.possibleColors);
+    if (node == -1) {
+      return this.fallback.nextGuess(game);
+    }
+    return PackedCode.unpack(this.tree.space.code(this.tree.guesses[node]), this.tree.space.pegs,
+            game.possibleColors);
+  }
+}
+
+// the trees games of each configuration can take their hints from
+class StrategyTrees {
+  static Map<String, StrategyTree> registered = new ConcurrentHashMap<>();
+
+  // makes hints for the tree's configuration come from the tree
+  static void register(StrategyTree tree) {
+    registered.put(FeedbackTables.key(tree.space.colors, tree.space.pegs, tree.space.duplicatesAllowed), tree);
+  }
+
+  // goes back to searching for hints
+  static void unregister(int colors, int pegs, boolean duplicatesAllowed) {
+    registered.remove(FeedbackTables.key(colors, pegs, duplicatesAllowed));
+  }
+
+  // the tree's guess for the game, or null when no tree covers its history
+  static ILoColor lookup(MMGame game) {
+    if (registered.isEmpty()) {
+      return null;
+    }
+    StrategyTree tree = registered.get(FeedbackTables.key(game.possibleColors.length(), game.sequenceLen,
+            game.duplicatesAllowed));
+    int node = tree == null ? -1 : tree.follow(game.past, game.possibleColors);
+    return node == -1
+            ? null
+            : PackedCode.unpack(tree.space.code(tree.guesses[node]), tree.space.pegs, game.possibleColors);
+  }
+}
+
+class ExamplesStrategyTree {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+  ILoColor sixColors = MMGame.makePalette(6);
+
+  boolean testBuild(Tester tester) {
+    StrategyTree tree = new StrategyTreeBuilder(classic).build();
+    // every secret is solved at exactly one node, by following its feedback down the tree
+    for (int secret = 0; secret < classic.size(); secret++) {
+      int node = 0;
+      while (node != -1 && tree.guesses[node] != secret) {
+        node = tree.child(node, classic.score(tree.guesses[node], secret));
+      }
+      if (!tester.checkRange(node, 0, tree.guesses.length)) {
+        return false;
+      }
+    }
+    return tester.checkExpect(classic.code(tree.guesses[0]), 0x0012L)
+            && tester.checkRange(tree.averageGuesses(), 4.3, 4.45)
+            && tester.checkRange(tree.maxGuesses(), 5, 7);
+  }
+
+  boolean testBeam(Tester tester) {
+    CodeSpace small = new CodeSpace(4, 3, true);
+    StrategyTree greedy = new StrategyTreeBuilder(small, small, 1, 0).build();
+    StrategyTree beam = new StrategyTreeBuilder(small, small, 4, 2).build();
+    return tester.checkExpect(beam.averageGuesses() <= greedy.averageGuesses(), true);
+  }
+
+  // the least total guesses any tree needs for the candidates, by trying every guess at every node
+  long fewestGuesses(CodeSpace space, int[] candidates, Map<CodeSet, Long> known) {
+    if (candidates.length == 1) {
+      return 1;
+    }
+    CodeSet key = new CodeSet(candidates);
+    Long cached = known.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    int slots = (space.pegs + 1) * (space.pegs + 1);
+    int winSlot = StrategyTree.slot(PackedCode.feedback(space.pegs, 0), space.pegs);
+    long best = Long.MAX_VALUE;
+    for (int guess = 0; guess < space.size(); guess++) {
+      int[][] parts = StrategyTreeBuilder.split(space, space.pegs, slots, guess, candidates);
+      long cost = candidates.length;
+      for (int slot = 0; slot < slots && cost < best; slot++) {
+        if (parts[slot].length == candidates.length) {
+          // learns nothing
+          cost = Long.MAX_VALUE;
+        } else if (slot != winSlot && parts[slot].length > 0) {
+          cost += this.fewestGuesses(space, parts[slot], known);
+        }
+      }
+      best = Math.min(best, cost);
+    }
+    known.put(key, best);
+    return best;
+  }
+
+  boolean testOptimal(Tester tester) {
+    // the search skips interchangeable guesses and prunes by bounds, and still agrees with
+    // trying everything
+    CodeSpace small = new CodeSpace(4, 3, true);
+    CodeSpace noRepeats = new CodeSpace(5, 3, false);
+    StrategyTree optimal = new StrategyTreeBuilder(small).buildOptimal(60_000);
+    StrategyTree other = new StrategyTreeBuilder(noRepeats).buildOptimal(60_000);
+    return tester.checkExpect(Math.round(optimal.averageGuesses() * small.size()),
+            this.fewestGuesses(small, this.allCodes(small), new HashMap<>()))
+            && tester.checkExpect(Math.round(other.averageGuesses() * noRepeats.size()),
+            this.fewestGuesses(noRepeats, this.allCodes(noRepeats), new HashMap<>()))
+            && tester.checkExpect(optimal.averageGuesses() < new StrategyTreeBuilder(small).build().averageGuesses(), true);
+  }
+
+  boolean testOptimalFallback(Tester tester) {
+    // with no time to search, the tree is the greedy one
+    CodeSpace small = new CodeSpace(4, 3, true);
+    return tester.checkExpect(new OptimalTreeSearch(small, small, 0).run(), null)
+            && tester.checkExpect(new StrategyTreeBuilder(small).buildOptimal(0).guesses,
+            new StrategyTreeBuilder(small).build().guesses);
+  }
+
+  // every code of the space
+  int[] allCodes(CodeSpace space) {
+    int[] all = new int[space.size()];
+    for (int code = 0; code < all.length; code++) {
+      all[code] = code;
+    }
+    return all;
+  }
+
+  boolean testSerialization(Tester tester) throws IOException {
+    CodeSpace small = new CodeSpace(5, 3, false);
+    StrategyTree tree = new StrategyTreeBuilder(small).build();
+    File file = File.createTempFile("strategy", ".mmst");
+    file.deleteOnExit();
+    tree.write(file);
+    StrategyTree read = StrategyTree.read(file);
+    return tester.checkExpect(read.guesses, tree.guesses)
+            && tester.checkExpect(read.feedbackMasks, tree.feedbackMasks)
+            && tester.checkExpect(read.firstChildren, tree.firstChildren)
+            && tester.checkExpect(file.length(), 15L + 12L * tree.size());
+  }
+
+  boolean testPlayAndHint(Tester tester) {
+    StrategyTree tree = new StrategyTreeBuilder(classic).build();
+    MMGame game = new MMGame(true, 4, 10, sixColors, new MtLoColor(), new MtLoGuess(), new Random(5));
+    MMGame solved = Simulation.play(game, new TreeStrategy(tree, new KnuthSolver(classic)));
+    StrategyTrees.register(tree);
+    ILoColor hint = StrategyTrees.lookup(game);
+    MMGame hinted = (MMGame) game.onKeyEvent("h");
+    StrategyTrees.unregister(6, 4, true);
+    return tester.checkExpect(solved.isWon(), true)
+            && tester.checkRange(solved.past.length(), 1, tree.maxGuesses() + 1)
+            && tester.checkExpect(hint, PackedCode.unpack(0x0012L, 4, sixColors))
+            && tester.checkExpect(hinted.current, hint)
+            && tester.checkExpect(StrategyTrees.lookup(game), null);
+  }
+}
@@ -0,0 +1,273 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the relabelings of pegs and used colors that map every guess so far onto itself, together
+// with any reordering of the colors no guess has used; they keep the feedback and the
+// consistent codes the same, so a guess scores exactly like its images and only the lowest
+// code of each class needs scoring. Each guess can only shrink the group, and once only the
+// identity is left the history has broken every symmetry and listing is skipped for good
+class Symmetry {
+  // more elements than this are not listed, only the unused colors are reduced
+  static final int MAX_ELEMENTS = 1 << 10;
+
+  int colors;
+  int pegs;
+  // a bit per color used by the history
+  int usedColors;
+  // where each element sends every peg and every color, the identity left out;
+  // null when the group has too many elements to list
+  int[][] positionMaps;
+  int[][] colorMaps;
+
+  // the symmetries of the first count packed guesses
+  Symmetry(int colors, int pegs, long[] guesses, int count) {
+    this.colors = colors;
+    this.pegs = pegs;
+    for (int i = 0; i < count; i++) {
+      for (int peg = 0; peg < pegs; peg++) {
+        this.usedColors |= 1 << PackedCode.colorAt(guesses[i], pegs, peg);
+      }
+    }
+
+    List<int[]> positions = new ArrayList<>();
+    List<int[]> colorings = new ArrayList<>();
+    int[] colorMap = new int[colors];
+    int[] colorSource = new int[colors];
+    for (int color = 0; color < colors; color++) {
+      colorMap[color] = -1;
+      colorSource[color] = -1;
+    }
+    boolean listed = this.search(0, new int[pegs], new boolean[pegs], colorMap, colorSource,
+            guesses, count, positions, colorings);
+    if (listed) {
+      this.positionMaps = positions.toArray(new int[0][]);
+      this.colorMaps = colorings.toArray(new int[0][]);
+    }
+  }
+
+  // the group once every symmetry is broken, only reordering colors outside the used ones
+  Symmetry(int colors, int pegs, int usedColors) {
+    this.colors = colors;
+    this.pegs = pegs;
+    this.usedColors = usedColors;
+    this.positionMaps = new int[0][];
+    this.colorMaps = new int[0][];
+  }
+
+  // the symmetries of the first count guesses, the last of them just added to this history
+  Symmetry extendedBy(long[] guesses, int count) {
+    if (!this.isBroken()) {
+      return new Symmetry(this.colors, this.pegs, guesses, count);
+    }
+    // a broken symmetry stays broken, only the unused colors need tracking
+    int used = this.usedColors;
+    for (int peg = 0; peg < this.pegs; peg++) {
+      used |= 1 << PackedCode.colorAt(guesses[count - 1], this.pegs, peg);
+    }
+    return new Symmetry(this.colors, this.pegs, used);
+  }
+
+  // is the code the canonical one of its color pattern: colors numbered by
+  // first use, pegs grouped by color and groups no longer than the one before;
+  // with no history every code is interchangeable with the canonical one of its pattern
+  static boolean isOpeningPattern(long code, int pegs) {
+    int color = 0;
+    int run = 0;
+    int previousRun = pegs;
+    for (int peg = 0; peg < pegs; peg++) {
+      int next = PackedCode.colorAt(code, pegs, peg);
+      if (next == color) {
+        run += 1;
+      } else if (next == color + 1 && run <= previousRun) {
+        color = next;
+        previousRun = run;
+        run = 1;
+      } else {
+        return false;
+      }
+    }
+    return run <= previousRun;
+  }
+
+  // is only the identity left, apart from reordering unused colors
+  boolean isBroken() {
+    return this.positionMaps != null && this.positionMaps.length == 0;
+  }
+
+  // the number of listed elements other than the identity
+  int size() {
+    return this.positionMaps == null ? -1 : this.positionMaps.length;
+  }
+
+  // extends a peg map fixed up to the given peg, collecting every complete one; false
+  // once there are too many to list
+  boolean search(int peg, int[] positionMap, boolean[] taken, int[] colorMap, int[] colorSource,
+                 long[] guesses, int count, List<int[]> positions, List<int[]> colorings) {
+    if (peg == this.pegs) {
+      if (!this.isIdentity(positionMap, colorMap)) {
+        int[] colorsMoved = new int[this.colors];
+        for (int color = 0; color < this.colors; color++) {
+          // unused colors stay put, their reorderings are handled separately
+          colorsMoved[color] = colorMap[color] == -1 ? color : colorMap[color];
+        }
+        positions.add(positionMap.clone());
+        colorings.add(colorsMoved);
+      }
+      return positions.size() <= MAX_ELEMENTS;
+    }
+    int[] assigned = new int[this.colors];
+    for (int target = 0; target < this.pegs; target++) {
+      if (taken[target]) {
+        continue;
+      }
+      // every guess must have the image of its color at this peg at the target peg
+      int newlyAssigned = 0;
+      boolean fits = true;
+      for (int i = 0; i < count && fits; i++) {
+        int from = PackedCode.colorAt(guesses[i], this.pegs, peg);
+        int to = PackedCode.colorAt(guesses[i], this.pegs, target);
+        if (colorMap[from] == -1 && colorSource[to] == -1) {
+          colorMap[from] = to;
+          colorSource[to] = from;
+          assigned[newlyAssigned] = from;
+          newlyAssigned += 1;
+        } else {
+          fits = colorMap[from] == to;
+        }
+      }
+      if (fits) {
+        positionMap[peg] = target;
+        taken[target] = true;
+        boolean listed = this.search(peg + 1, positionMap, taken, colorMap, colorSource,
+                guesses, count, positions, colorings);
+        taken[target] = false;
+        if (!listed) {
+          return false;
+        }
+      }
+      for (int i = 0; i < newlyAssigned; i++) {
+        colorSource[colorMap[assigned[i]]] = -1;
+        colorMap[assigned[i]] = -1;
+      }
+    }
+    return true;
+  }
+
+  // does the element move nothing
+  boolean isIdentity(int[] positionMap, int[] colorMap) {
+    for (int peg = 0; peg < this.pegs; peg++) {
+      if (positionMap[peg] != peg) {
+        return false;
+      }
+    }
+    for (int color = 0; color < this.colors; color++) {
+      if (colorMap[color] != -1 && colorMap[color] != color) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // is the code the lowest of the codes the symmetries map it to
+  boolean isRepresentative(long code) {
+    if (this.withFreshInOrder(code) != code) {
+      return false;
+    }
+    if (this.positionMaps == null) {
+      return true;
+    }
+    for (int element = 0; element < this.positionMaps.length; element++) {
+      if (this.withFreshInOrder(this.image(element, code)) < code) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // where the element sends the code
+  long image(int element, long code) {
+    int[] positionMap = this.positionMaps[element];
+    int[] colorMap = this.colorMaps[element];
+    long image = 0;
+    for (int peg = 0; peg < this.pegs; peg++) {
+      long color = colorMap[PackedCode.colorAt(code, this.pegs, peg)];
+      image |= color << ((this.pegs - 1 - positionMap[peg]) * PackedCode.BITS_PER_PEG);
+    }
+    return image;
+  }
+
+  // the code with its unused colors renamed, lowest first in the order they appear,
+  // which is the lowest code any reordering of the unused colors can give
+  long withFreshInOrder(long code) {
+    int seen = this.usedColors;
+    // the new name of each unused color, a nibble each
+    long renames = 0;
+    int renamed = 0;
+    long result = 0;
+    for (int peg = 0; peg < this.pegs; peg++) {
+      int color = PackedCode.colorAt(code, this.pegs, peg);
+      if ((this.usedColors & (1 << color)) == 0) {
+        if ((renamed & (1 << color)) == 0) {
+          int lowest = Integer.numberOfTrailingZeros(~seen);
+          renames |= (long) lowest << (color * PackedCode.BITS_PER_PEG);
+          renamed |= 1 << color;
+          seen |= 1 << lowest;
+        }
+        color = (int) (renames >>> (color * PackedCode.BITS_PER_PEG)) & 0xF;
+      }
+      result = PackedCode.push(result, color);
+    }
+    return result;
+  }
+}
+
+class ExamplesSymmetry {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+
+  boolean testGroups(Tester tester) {
+    // 0011 is kept by swapping either pair of pegs, and by swapping the pairs with the colors
+    Symmetry afterOpening = new Symmetry(6, 4, new long[] {0x0011L}, 1);
+    // 0123 only keeps swapping the last two pegs along with their colors
+    Symmetry afterTwo = new Symmetry(6, 4, new long[] {0x0011L, 0x0123L}, 2);
+    // 0120 keeps nothing
+    Symmetry broken = new Symmetry(6, 4, new long[] {0x0011L, 0x0120L}, 2);
+    return tester.checkExpect(afterOpening.size(), 7)
+            && tester.checkExpect(afterTwo.size(), 1)
+            && tester.checkExpect(afterTwo.isRepresentative(0x0031L), false)
+            && tester.checkExpect(afterOpening.isRepresentative(0x0012L), true)
+            && tester.checkExpect(afterOpening.isRepresentative(0x1002L), false)
+            && tester.checkExpect(afterOpening.isRepresentative(0x0013L), false)
+            && tester.checkExpect(broken.isBroken(), true)
+            && tester.checkExpect(broken.isRepresentative(0x3300L), true)
+            && tester.checkExpect(broken.isRepresentative(0x4400L), false)
+            // too many to list: only unused colors are reduced
+            && tester.checkExpect(new Symmetry(8, 8, new long[] {0x00000000L}, 1).size(), -1);
+  }
+
+  boolean testSamePicks(Tester tester) {
+    // scoring only representatives picks exactly what scoring every code picks
+    List<Integer> reducedPicks = new ArrayList<>();
+    List<Integer> fullPicks = new ArrayList<>();
+    for (int secret = 0; secret < classic.size(); secret += 61) {
+      KnuthSolver reduced = new KnuthSolver(classic, classic);
+      KnuthSolver full = new KnuthSolver(classic, classic) {
+        boolean isWorthScoring(int guess) {
+          return true;
+        }
+      };
+      int guess = full.nextGuess();
+      while (classic.score(guess, secret) != PackedCode.feedback(4, 0)) {
+        reducedPicks.add(reduced.nextGuess());
+        fullPicks.add(guess);
+        reduced.record(guess, classic.score(guess, secret));
+        full.record(guess, classic.score(guess, secret));
+        guess = full.nextGuess();
+      }
+    }
+    return tester.checkExpect(reducedPicks, fullPicks);
+  }
+}
@@ -0,0 +1,236 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// how one strategy did in a tournament, added to by every worker without locking
+class StrategyStats {
+  String name;
+  LongAdder games = new LongAdder();
+  LongAdder wins = new LongAdder();
+  LongAdder guesses = new LongAdder();
+  LongAccumulator maxGuesses = new LongAccumulator(Math::max, 0);
+  LongAdder decisions = new LongAdder();
+  LongAdder cpuNanos = new LongAdder();
+
+  StrategyStats(String name) {
+    this.name = name;
+  }
+
+  // counts a finished game
+  void record(MMGame finished) {
+    int taken = finished.past.length();
+    this.games.increment();
+    this.guesses.add(taken);
+    this.maxGuesses.accumulate(taken);
+    if (finished.isWon()) {
+      this.wins.increment();
+    }
+  }
+
+  // the share of games won within the guess limit
+  double winRate() {
+    long games = this.games.sum();
+    return games == 0 ? 0 : (double) this.wins.sum() / games;
+  }
+
+  // the guesses per game, lost games counting every guess they made
+  double meanGuesses() {
+    long games = this.games.sum();
+    return games == 0 ? 0 : (double) this.guesses.sum() / games;
+  }
+
+  // the CPU time the strategy spent per guess it picked
+  double cpuMicrosPerDecision() {
+    long decisions = this.decisions.sum();
+    return decisions == 0 ? 0 : this.cpuNanos.sum() / 1000.0 / decisions;
+  }
+
+  public String toString() {
+    return String.format("%-18s %9d games  won %7.3f%%  mean %7.4f  max %3d  %10.2f us cpu/guess",
+            this.name, this.games.sum(), 100 * this.winRate(), this.meanGuesses(),
+            this.maxGuesses.get(), this.cpuMicrosPerDecision());
+  }
+}
+
+// times every decision of a strategy in CPU time of the thread making it
+class TimedStrategy implements IGuessStrategy {
+  static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+  IGuessStrategy strategy;
+  StrategyStats stats;
+
+  TimedStrategy(IGuessStrategy strategy, StrategyStats stats) {
+    this.strategy = strategy;
+    this.stats = stats;
+  }
+
+  // the wrapped strategy's guess
+  public ILoColor nextGuess(MMGame game) {
+    long start = now();
+    ILoColor guess = this.strategy.nextGuess(game);
+    this.stats.cpuNanos.add(now() - start);
+    this.stats.decisions.increment();
+    return guess;
+  }
+
+  // this thread's CPU time, or wall time where the JVM cannot tell
+  static long now() {
+    return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+  }
+}
+
+// plays every entered strategy against the same secrets: game n of the tournament has the
+// secret MMGame.makeSequence draws from Simulation.gameSeed(seed, n) for every strategy, so
+// results depend only on the seed and the game count, never on the workers or their timing
+class Tournament {
+  boolean duplicatesAllowed;
+  int sequenceLen;
+  int maxGuesses;
+  ILoColor possibleColors;
+
+  List<String> names = new ArrayList<>();
+  List<Supplier<IGuessStrategy>> entrants = new ArrayList<>();
+
+  Tournament(boolean duplicatesAllowed, int sequenceLen, int maxGuesses, ILoColor possibleColors) {
+    MMGame.validateParams(duplicatesAllowed, sequenceLen, maxGuesses, possibleColors);
+    this.duplicatesAllowed = duplicatesAllowed;
+    this.sequenceLen = sequenceLen;
+    this.maxGuesses = maxGuesses;
+    this.possibleColors = possibleColors;
+  }
+
+  // enters a strategy, made fresh for every game
+  Tournament enter(String name, Supplier<IGuessStrategy> strategies) {
+    this.names.add(name);
+    this.entrants.add(strategies);
+    return this;
+  }
+
+  // plays the games on a pool of workers and ranks the strategies: most wins, then fewest
+  // guesses on average, then the smallest worst game, then by name
+  List<StrategyStats> run(long games, long seed, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("must have at least one worker");
+    }
+    List<StrategyStats> stats = new ArrayList<>();
+    for (String name : this.names) {
+      stats.add(new StrategyStats(name));
+    }
+    AtomicLong nextGame = new AtomicLong();
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> parts = new ArrayList<>();
+      for (int worker = 0; worker < workers; worker++) {
+        parts.add(pool.submit(() -> this.runWorker(nextGame, games, seed, stats)));
+      }
+      for (Future<?> part : parts) {
+        part.get();
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("tournament failed", e);
+    } finally {
+      pool.shutdownNow();
+    }
+    stats.sort(Comparator.comparingLong((StrategyStats s) -> -s.wins.sum())
+            .thenComparingLong(s -> s.guesses.sum())
+            .thenComparingLong(s -> s.maxGuesses.get())
+            .thenComparing(s -> s.name));
+    return stats;
+  }
+
+  // plays batches of games, every strategy on each, until none are left
+  void runWorker(AtomicLong nextGame, long games, long seed, List<StrategyStats> stats) {
+    Random rand = new Random();
+    long first = nextGame.getAndAdd(Simulation.BATCH);
+    while (first < games) {
+      long last = Math.min(games, first + Simulation.BATCH);
+      for (long game = first; game < last; game++) {
+        for (int entrant = 0; entrant < this.entrants.size(); entrant++) {
+          rand.setSeed(Simulation.gameSeed(seed, game));
+          MMGame start = new MMGame(this.duplicatesAllowed, this.sequenceLen, this.maxGuesses,
+                  this.possibleColors, new MtLoColor(), new MtLoGuess(), rand);
+          StrategyStats entrantStats = stats.get(entrant);
+          IGuessStrategy timed = new TimedStrategy(this.entrants.get(entrant).get(), entrantStats);
+          entrantStats.record(Simulation.play(start, timed));
+        }
+      }
+      first = nextGame.getAndAdd(Simulation.BATCH);
+    }
+  }
+
+  // ranks the built-in strategies from the command line:
+  //   colors pegs games workers seed
+  public static void main(String[] args) {
+    int colors = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+    int pegs = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    long games = args.length > 2 ? Long.parseLong(args[2]) : 100000;
+    int workers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+    long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+    CodeSpace space = new CodeSpace(colors, pegs, true);
+    IScorer scorer = ScoreTable.bestFor(space);
+    Tournament tournament = new Tournament(true, pegs, 20, MMGame.makePalette(colors))
+            .enter("knuth", () -> new KnuthSolver(space, scorer))
+            .enter("first-candidate", () -> new FirstCandidateSolver(space, scorer));
+    if (pegs <= StrategyTree.MAX_PEGS) {
+      StrategyTree tree = new StrategyTreeBuilder(space, scorer, 1, 0).build();
+      tournament.enter("most-parts-tree", () -> new TreeStrategy(tree, new KnuthSolver(space, scorer)));
+    }
+    for (StrategyStats stats : tournament.run(games, seed, workers)) {
+      System.out.println(stats);
+    }
+  }
+}
+
+class ExamplesTournament {
+  CodeSpace classic = new CodeSpace(6, 4, true);
+
+  Tournament classicTournament() {
+    return new Tournament(true, 4, 10, MMGame.makePalette(6))
+            .enter("first-candidate", () -> new FirstCandidateSolver(classic, classic))
+            .enter("knuth", () -> new KnuthSolver(classic, classic));
+  }
+
+  boolean testRanking(Tester tester) {
+    List<StrategyStats> ranked = this.classicTournament().run(300, 11, 2);
+    return tester.checkExpect(ranked.get(0).name, "knuth")
+            && tester.checkExpect(ranked.get(0).winRate(), 1.0)
+            && tester.checkRange(ranked.get(0).maxGuesses.get(), 1L, 6L)
+            && tester.checkExpect(ranked.get(1).name, "first-candidate")
+            && tester.checkExpect(ranked.get(0).meanGuesses() < ranked.get(1).meanGuesses(), true)
+            && tester.checkExpect(ranked.get(0).decisions.sum(), ranked.get(0).guesses.sum());
+  }
+
+  boolean testReproducible(Tester tester) {
+    // the same seed gives the same games at any worker count
+    List<StrategyStats> one = this.classicTournament().run(200, 5, 1);
+    List<StrategyStats> three = this.classicTournament().run(200, 5, 3);
+    if (!tester.checkExpect(three.size(), one.size())) {
+      return false;
+    }
+    for (int i = 0; i < one.size(); i++) {
+      if (!(tester.checkExpect(three.get(i).name, one.get(i).name)
+              && tester.checkExpect(three.get(i).guesses.sum(), one.get(i).guesses.sum())
+              && tester.checkExpect(three.get(i).wins.sum(), one.get(i).wins.sum()))) {
+        return false;
+      }
+    }
+    return tester.checkConstructorException(new IllegalArgumentException("not enough possible colors"),
+            "Tournament", false, 7, 10, MMGame.makePalette(6));
+  }
+}
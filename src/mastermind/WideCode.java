@@ -0,0 +1,125 @@
+package mastermind;
+
+import tester.*;                // The tester library
+
+import java.awt.Color;          // general colors (as triples of red,green,blue values)
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+// codes too wide to pack in a long, up to 64 colors, as one palette index per byte; the
+// palette's color positions are kept in a map and the secret's colors are counted a nibble
+// each into four longs, so scoring never walks a list
+class WideCode {
+  static final int MAX_COLORS = 64;
+  // exact matches must fit the feedback's nibble
+  static final int MAX_PEGS = 15;
+
+  static Map<ILoColor, Map<Color, Integer>> paletteIndexes = Collections.synchronizedMap(new WeakHashMap<>());
+
+  // can codes of the configuration be scored this way
+  static boolean fits(int colors, int pegs) {
+    return colors <= MAX_COLORS && pegs <= MAX_PEGS;
+  }
+
+  // the palette index of every color of the sequence
+  static byte[] of(ILoColor sequence, ILoColor palette) {
+    Color[] colors = new Color[sequence.length()];
+    sequence.copyInto(colors, 0);
+    Map<Color, Integer> indexes = indexesOf(palette);
+    byte[] code = new byte[colors.length];
+    for (int peg = 0; peg < code.length; peg++) {
+      Integer index = indexes.get(colors[peg]);
+      if (index == null) {
+        throw new IllegalArgumentException("given color is not in the list");
+      }
+      code[peg] = (byte) (int) index;
+    }
+    return code;
+  }
+
+  // where each color of the palette is, kept for as long as the palette list is in use
+  static Map<Color, Integer> indexesOf(ILoColor palette) {
+    Map<Color, Integer> indexes = paletteIndexes.get(palette);
+    if (indexes == null) {
+      Color[] colors = new Color[palette.length()];
+      palette.copyInto(colors, 0);
+      indexes = new HashMap<>();
+      for (int i = colors.length - 1; i >= 0; i--) {
+        // the first of any repeated color wins, like indexOf
+        indexes.put(colors[i], i);
+      }
+      paletteIndexes.put(palette, indexes);
+    }
+    return indexes;
+  }
+
+  // the sequence of palette colors the code names
+  static ILoColor colors(byte[] code, Color[] palette) {
+    ILoColor sequence = new MtLoColor();
+    for (int peg = code.length - 1; peg >= 0; peg--) {
+      sequence = new ConsLoColor(palette[code[peg]], sequence);
+    }
+    return sequence;
+  }
+
+  // the feedback of the guess for the secret, as PackedCode.feedback
+  static int score(byte[] guess, byte[] secret) {
+    long[] counts = new long[MAX_COLORS / 16];
+    int exact = 0;
+    for (int peg = 0; peg < secret.length; peg++) {
+      exact += guess[peg] == secret[peg] ? 1 : 0;
+      counts[secret[peg] >>> 4] += 1L << ((secret[peg] & 15) * 4);
+    }
+    int matches = 0;
+    for (int peg = 0; peg < guess.length; peg++) {
+      int shift = (guess[peg] & 15) * 4;
+      int group = guess[peg] >>> 4;
+      if (((counts[group] >>> shift) & 15) != 0) {
+        matches += 1;
+        counts[group] -= 1L << shift;
+      }
+    }
+    return PackedCode.feedback(exact, matches - exact);
+  }
+}
+
+class ExamplesWideCode {
+  ILoColor wide = MMGame.makePalette(40);
+  Color[] wideColors = new Color[40];
+
+  boolean testPalette(Tester tester) {
+    // every color of a large palette is its own, so indexes survive a round trip
+    wide.copyInto(wideColors, 0);
+    int[] indexes = new int[40];
+    int[] positions = new int[40];
+    for (int i = 0; i < 40; i++) {
+      indexes[i] = wide.indexOf(wideColors[i]);
+      positions[i] = i;
+    }
+    return tester.checkExpect(indexes, positions)
+            && tester.checkExpect(MMGame.makePalette(64).length(), 64);
+  }
+
+  boolean testScore(Tester tester) {
+    // the same feedback as the list matchers, on random 12 peg codes of 40 colors
+    wide.copyInto(wideColors, 0);
+    Random rand = new Random(17);
+    SequenceGenerator gen = new SequenceGenerator(40, 12, true);
+    int[] fast = new int[500];
+    int[] matched = new int[500];
+    for (int i = 0; i < 500; i++) {
+      ILoColor guess = gen.next(rand, wide);
+      ILoColor secret = gen.next(rand, wide);
+      int exact = guess.findExact(secret);
+      fast[i] = WideCode.score(WideCode.of(guess, wide), WideCode.of(secret, wide));
+      matched[i] = PackedCode.feedback(exact, guess.findInexact(secret) - exact);
+    }
+    byte[] code = {39, 0, 17, 17};
+    return tester.checkExpect(fast, matched)
+            && tester.checkExpect(WideCode.of(WideCode.colors(code, wideColors), wide), code)
+            && tester.checkExpect(WideCode.score(code, new byte[] {17, 0, 17, 3}), PackedCode.feedback(2, 1));
+  }
+}